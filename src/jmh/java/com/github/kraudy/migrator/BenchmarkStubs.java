@@ -0,0 +1,162 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * In-process stand-ins for the host servers, so the benchmarks measure the migrator and not the network.
+ */
+final class BenchmarkStubs {
+  static final byte[] MEMBER = source(60);
+
+  private BenchmarkStubs() {
+  }
+
+  static byte[] source(int lines) {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < lines; i++) content.append("       dsply 'Benchmark line ").append(i).append("';\n");
+    return content.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static List<SourceMember> work(int members) {
+    List<SourceMember> work = new ArrayList<>(members);
+    for (int i = 0; i < members; i++) {
+      work.add(new SourceMember("BENCHLIB", "QRPGLESRC", "MBR" + i, "RPGLE", "2024-01-01 10:00:00.000000", 60, 8192));
+    }
+    return work;
+  }
+
+  /* The migrator prints a line per member. The benchmarks measure the work, not the console. */
+  static PrintStream quiet() {
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    }));
+    return console;
+  }
+
+  /* Member reader that answers after a simulated host server round trip. */
+  static class FixedMemberReader implements MemberReader {
+    private final long latencyMicros;
+
+    FixedMemberReader(long latencyMicros) {
+      this.latencyMicros = latencyMicros;
+    }
+
+    @Override
+    public byte[] read(String library, String sourcePf, String member) throws IOException {
+      if (latencyMicros > 0) {
+        try {
+          TimeUnit.MICROSECONDS.sleep(latencyMicros);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+      return MEMBER;
+    }
+  }
+
+  static class DiscardSink implements OutputSink {
+    @Override
+    public String write(String entryName, byte[] content) {
+      return entryName;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /* Connection whose queries return the rows of the work list and whose QCMDEXC batches always succeed. */
+  static Connection connection(List<SourceMember> rows) {
+    return (Connection) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { Connection.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "createStatement":
+              return statement(rows);
+            case "prepareStatement":
+              return qcmdexc();
+            case "isClosed":
+              return false;
+            default:
+              return null;
+          }
+        });
+  }
+
+  private static Statement statement(List<SourceMember> rows) {
+    return (Statement) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { Statement.class },
+        (proxy, method, args) -> method.getName().equals("executeQuery") ? resultSet(rows) : null);
+  }
+
+  private static ResultSet resultSet(List<SourceMember> rows) {
+    int[] row = { -1 };
+    return (ResultSet) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "next":
+              return ++row[0] < rows.size();
+            case "getString":
+              SourceMember member = rows.get(row[0]);
+              switch ((String) args[0]) {
+                case "Library": return member.getLibrary();
+                case "SourcePf": return member.getSourcePf();
+                case "Member": return member.getMember();
+                case "SourceType": return member.getSourceType();
+                default: return member.getLastUpdate();
+              }
+            default:
+              return null;
+          }
+        });
+  }
+
+  /* Batch query of BatchCommandExecutor: every command of the batch ran. */
+  private static PreparedStatement qcmdexc() {
+    int[] commands = { 0 };
+    return (PreparedStatement) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "setString":
+              commands[0] = Math.max(commands[0], (Integer) args[0]);
+              return null;
+            case "executeQuery":
+              return batchResults(commands[0]);
+            default:
+              return null;
+          }
+        });
+  }
+
+  private static ResultSet batchResults(int commands) {
+    int[] row = { 0 };
+    return (ResultSet) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "next":
+              return ++row[0] <= commands;
+            case "getInt":
+              return (Integer) args[0] == 1 ? row[0] : 1;
+            default:
+              return null;
+          }
+        });
+  }
+}
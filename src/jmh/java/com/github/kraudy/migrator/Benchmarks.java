@@ -0,0 +1,104 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with the GC profiler and writes a CSV report to keep as the baseline of a release.
+ * Given the report of an earlier release, prints the change of every score against it.
+ *
+ * Args: include regex, report file, optional baseline report.
+ */
+public class Benchmarks {
+  private static final String ALLOCATION = "gc.alloc.rate.norm"; // Bytes allocated per operation
+
+  public static void main(String... args) throws Exception {
+    String include = args.length > 0 ? args[0] : MemberDispatchBenchmark.class.getPackage().getName() + ".*Benchmark";
+    Path report = Paths.get(args.length > 1 ? args[1] : "jmh-result.csv");
+    String baseline = args.length > 2 ? args[2].trim() : "";
+
+    Files.createDirectories(report.toAbsolutePath().getParent());
+    Collection<RunResult> results = new Runner(new OptionsBuilder()
+        .include(include)
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.CSV)
+        .result(report.toString())
+        .build()).run();
+
+    System.out.println("\nBaseline report: " + report);
+    if (!baseline.isEmpty()) compare(results, Paths.get(baseline));
+  }
+
+  /* Key of a result in both the run and the CSV: benchmark name plus its params in name order. */
+  private static String key(String benchmark, Map<String, String> params) {
+    return benchmark + new TreeMap<>(params);
+  }
+
+  private static void compare(Collection<RunResult> results, Path baselineFile) throws IOException {
+    Map<String, Double> baseline = readScores(baselineFile);
+    System.out.println("Against " + baselineFile + " (time: lower is better)");
+    System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Now", "Change");
+
+    for (RunResult result : results) {
+      BenchmarkParams params = result.getParams();
+      Map<String, String> values = new HashMap<>();
+      for (String name : params.getParamsKeys()) values.put(name, params.getParam(name));
+
+      print(key(params.getBenchmark(), values), result.getPrimaryResult(), baseline);
+      Result allocation = result.getSecondaryResults().get(ALLOCATION);
+      if (allocation != null) print(key(params.getBenchmark() + ":" + ALLOCATION, values), allocation, baseline);
+    }
+  }
+
+  private static void print(String key, Result result, Map<String, Double> baseline) {
+    Double before = baseline.get(key);
+    String change = before == null || before == 0 ? "new" : String.format("%+.1f%%", (result.getScore() - before) * 100 / before);
+    System.out.printf("%-90s %14s %14.3f %9s%n", key, before == null ? "-" : String.format("%.3f", before), result.getScore(), change);
+  }
+
+  /* JMH CSV: "Benchmark","Mode","Threads","Samples","Score","Score Error (99.9%)","Unit","Param: name",... */
+  private static Map<String, Double> readScores(Path csv) throws IOException {
+    Map<String, Double> scores = new HashMap<>();
+    List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+    if (lines.isEmpty()) return scores;
+
+    String[] header = split(lines.get(0));
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = split(line);
+      if (fields.length != header.length) continue;
+
+      Map<String, String> params = new HashMap<>();
+      for (int i = 7; i < header.length; i++) {
+        if (!fields[i].isEmpty()) params.put(header[i].replace("Param: ", ""), fields[i]);
+      }
+      try {
+        scores.put(key(fields[0], params), Double.parseDouble(fields[4]));
+      } catch (NumberFormatException e) {
+        // NaN rows of profilers that had nothing to report
+      }
+    }
+    return scores;
+  }
+
+  private static String[] split(String line) {
+    String[] fields = line.split(",", -1);
+    for (int i = 0; i < fields.length; i++) fields[i] = fields[i].replace("\"", "").trim();
+    return fields;
+  }
+}
@@ -0,0 +1,77 @@
+package com.github.kraudy.migrator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Building the work list: the legacy query string, the bound IN list chunks and the in-memory catalog selection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogQueryBenchmark {
+
+  @Param({ "10", "1000" })
+  public int members;
+
+  private Utilities utilities;
+  private List<String> memberNames;
+  private SourceCatalog catalog;
+  private List<String> libraries;
+
+  @Setup
+  public void setUp() {
+    utilities = new Utilities((StatementCache) null, null, false);
+    memberNames = new ArrayList<>();
+    for (int i = 0; i < members; i++) memberNames.add("MBR" + i);
+
+    libraries = Arrays.asList("BENCHLIB", "OTHERLIB");
+    catalog = new SourceCatalog(libraries);
+    for (String library : libraries) {
+      for (int pf = 0; pf < 10; pf++) {
+        for (int i = 0; i < members; i++) {
+          catalog.add(new SourceMember(library, "QSRC" + pf, "MBR" + i, "RPGLE", "2024-01-01 10:00:00.000000"));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  @SuppressWarnings("deprecation")
+  public String migrationQuery() throws Exception {
+    return utilities.getMigrationQuery(libraries, "QSRC1", memberNames);
+  }
+
+  @Benchmark
+  public List<List<String>> boundMemberChunks() {
+    return StatementCache.chunks(memberNames);
+  }
+
+  @Benchmark
+  public List<SourceMember> catalogSelectPf() {
+    return catalog.select(libraries, "QSRC1", Collections.<String>emptyList());
+  }
+
+  @Benchmark
+  public List<SourceMember> catalogSelectMembers() {
+    return catalog.select(libraries, "QSRC1", memberNames);
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.kraudy.migrator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Overhead per CL command of the two backends: one call per command, or QCMDEXC batches over JDBC.
+ * Both talk to stubs, so this is the cost the migrator adds on top of the host server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandDispatchBenchmark {
+  static final int COMMANDS = 1024; // A multiple of every thread count, no partial batch
+
+  @Param({ "1", "4", "16" })
+  public int threads;
+
+  private MigrationEngine single;
+  private MigrationEngine batched;
+  private List<String> commands;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    single = new MigrationEngine(threads, cmd -> CommandResult.ok(cmd));
+    // A batch fills with one command per thread, so it is sent without waiting for the linger
+    batched = new MigrationEngine(threads, new BatchCommandExecutor(BenchmarkStubs.connection(new ArrayList<SourceMember>()), threads));
+
+    commands = new ArrayList<>();
+    for (int i = 0; i < COMMANDS; i++) {
+      commands.add("CPYTOSTMF FROMMBR('/QSYS.lib/BENCHLIB.lib/QRPGLESRC.file/MBR" + i + ".mbr') " +
+          "TOSTMF('/home/bench/BENCHLIB/QRPGLESRC/MBR" + i + ".RPGLE') STMFOPT(*REPLACE) STMFCCSID(1208) ENDLINFMT(*LF)");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    single.close();
+    batched.close();
+  }
+
+  private int dispatch(MigrationEngine engine) {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>(COMMANDS);
+    for (String commandStr : commands) results.add(engine.submit(commandStr));
+    int ok = 0;
+    for (CompletableFuture<CommandResult> result : results) {
+      if (result.join().isSuccess()) ok++;
+    }
+    return ok;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMANDS)
+  public int commandPerCall() {
+    return dispatch(single);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMANDS)
+  public int qcmdexcBatches() {
+    return dispatch(batched);
+  }
+}
@@ -0,0 +1,84 @@
+package com.github.kraudy.migrator;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.as400.access.CharConverter;
+
+/*
+ * One member of 80 byte SRCDTA records to UTF-8 lines: jt400 CharConverter to a String then trim and
+ * getBytes, what the record reader did for every CCSID, against the tables of EbcdicConverter on one line buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EbcdicConversionBenchmark {
+  private static final int RECORDS = 1000;
+  private static final int RECORD_LENGTH = 80;
+
+  @Param({ "37", "1141" })
+  public int ccsid;
+
+  private byte[][] records;
+  private CharConverter charConverter;
+  private EbcdicConverter converter;
+  private ByteArrayOutputStream content;
+  private byte[] line;
+
+  @Setup
+  public void setUp() throws Exception {
+    charConverter = new CharConverter(ccsid);
+    converter = EbcdicConverter.forCcsid(ccsid);
+    content = new ByteArrayOutputStream(RECORDS * RECORD_LENGTH);
+    line = new byte[EbcdicConverter.maxUtf8Length(RECORD_LENGTH) + 1];
+
+    // Code of 20 to 70 chars then blanks, mostly letters, digits and punctuation with some national chars
+    Random random = new Random(42);
+    String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ();:'=+-*/.,äöüßéè§";
+    records = new byte[RECORDS][];
+    for (int r = 0; r < RECORDS; r++) {
+      StringBuilder text = new StringBuilder();
+      int length = 20 + random.nextInt(50);
+      for (int i = 0; i < length; i++) text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      while (text.length() < RECORD_LENGTH) text.append(' ');
+      records[r] = charConverter.stringToByteArray(text.toString());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public int charConverter() {
+    content.reset();
+    for (byte[] record : records) {
+      RecordMemberReader.appendLine(content, charConverter.byteArrayToString(record, 0, record.length));
+    }
+    return content.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public int tables() {
+    content.reset();
+    for (byte[] record : records) {
+      content.write(line, 0, converter.toUtf8Line(record, 0, record.length, line, 0));
+    }
+    return content.size();
+  }
+}
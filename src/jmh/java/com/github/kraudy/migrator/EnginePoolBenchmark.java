@@ -0,0 +1,83 @@
+package com.github.kraudy.migrator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Time to run MEMBERS commands that each block for a host server round trip: on the common
+ * ForkJoinPool, sized to the cores, or on the engine with THREADS dedicated threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnginePoolBenchmark {
+  static final int MEMBERS = 64;
+  static final int THREADS = 16;
+  static final long COMMAND_MILLIS = 10;
+
+  private MigrationEngine engine;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    engine = new MigrationEngine(THREADS, EnginePoolBenchmark::roundTrip);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    engine.close();
+  }
+
+  static CommandResult roundTrip(String commandStr) {
+    try {
+      Thread.sleep(COMMAND_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return CommandResult.ok(commandStr);
+  }
+
+  @Benchmark
+  public int commonPool() {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>(MEMBERS);
+    for (int i = 0; i < MEMBERS; i++) {
+      String commandStr = "CPYTOSTMF MBR" + i;
+      results.add(CompletableFuture.supplyAsync(() -> roundTrip(commandStr)));
+    }
+    return join(results);
+  }
+
+  @Benchmark
+  public int engine() {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>(MEMBERS);
+    for (int i = 0; i < MEMBERS; i++) {
+      results.add(engine.submit("CPYTOSTMF MBR" + i));
+    }
+    return join(results);
+  }
+
+  private static int join(List<CompletableFuture<CommandResult>> results) {
+    int ok = 0;
+    for (CompletableFuture<CommandResult> result : results) {
+      if (result.join().isSuccess()) ok++;
+    }
+    return ok;
+  }
+}
@@ -0,0 +1,84 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+
+/*
+ * Migrates a whole simulated library, 100k members by default, once per thread count and prints
+ * the throughput of each. Shows where more threads stop helping for a given number of host jobs.
+ *
+ * Args: members, host jobs, median read latency in micros, error rate, thread counts (comma separated), adaptive.
+ */
+public class LoadTest {
+  private static final int SOURCE_PFS = 20;
+  private static final int ROWS = 200;
+
+  public static void main(String... args) throws Exception {
+    int members = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int hostJobs = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    long readMicros = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+    double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.001;
+    String threadCounts = args.length > 4 ? args[4] : "4,16,64";
+    boolean adaptive = args.length > 5 && Boolean.parseBoolean(args[5]);
+
+    System.out.printf("%d members, %d host jobs, %d us median read, %.2f%% errors%s%n",
+        Math.max(1, members / SOURCE_PFS) * SOURCE_PFS, hostJobs, readMicros, errorRate * 100, adaptive ? ", adaptive" : "");
+    System.out.printf("%8s %12s %10s %10s %10s %10s%n", "Threads", "Members/s", "Seconds", "Errors", "Retries", "Max jobs");
+
+    for (String count : threadCounts.split(",")) {
+      int threads = Integer.parseInt(count.trim());
+      Path outDir = Files.createTempDirectory("migrator-load");
+      SimulatedSystem run = simulate(members, hostJobs, readMicros, errorRate); // Fresh counters per run
+
+      SourceMigrator migrator = new SourceMigrator(run, run, run);
+      migrator.setThreads(threads);
+      migrator.setAdaptive(adaptive);
+      migrator.setMigrationParams("SIMLIB", "", Collections.<String>emptyList(), outDir.toString());
+
+      PrintStream console = BenchmarkStubs.quiet(); // One line per member otherwise
+      long start = System.nanoTime();
+      try {
+        migrator.api();
+      } finally {
+        migrator.closeEngine();
+        System.setOut(console);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      MigrationMetrics metrics = migrator.getMetrics();
+      System.out.printf("%8d %12.1f %10.2f %10d %10d %10d%n", threads, metrics.getMembersMigrated() / seconds, seconds,
+          metrics.getMigrationErrors(), metrics.getRetries(), run.getMaxActiveJobs());
+      delete(outDir);
+    }
+  }
+
+  private static SimulatedSystem simulate(int members, int hostJobs, long readMicros, double errorRate) {
+    return new SimulatedSystem(hostJobs)
+        .addLibrary("SIMLIB", SOURCE_PFS, Math.max(1, members / SOURCE_PFS), ROWS)
+        .setCatalogLatency(SimulatedSystem.Latency.fixed(200000)) // One SYSPARTITIONSTAT query
+        .setReadLatency(SimulatedSystem.Latency.logNormal(readMicros, 0.5))
+        .setErrorRate(errorRate, "CPF5029");
+  }
+
+  private static void delete(Path dir) throws IOException {
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
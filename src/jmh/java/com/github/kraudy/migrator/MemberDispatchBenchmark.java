@@ -0,0 +1,81 @@
+package com.github.kraudy.migrator;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost per member of the migration pipeline: work list, in-flight bound, engine dispatch, read, sink, metrics.
+ * hostMicros 0 shows the migrator's own overhead, a non zero value shows how threads hide host latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberDispatchBenchmark {
+  static final int MEMBERS = 1000;
+
+  @Param({ "1", "4", "16" })
+  public int threads;
+
+  @Param({ "0", "500" })
+  public long hostMicros;
+
+  private List<SourceMember> work;
+  private SourceMigrator migrator;
+  private String querySources;
+  private PrintStream console;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    console = BenchmarkStubs.quiet();
+    work = BenchmarkStubs.work(MEMBERS);
+
+    migrator = new SourceMigrator(BenchmarkStubs.connection(work), null, cmd -> CommandResult.ok(cmd), 
+        new BenchmarkStubs.FixedMemberReader(hostMicros), new BenchmarkStubs.DiscardSink());
+    migrator.setThreads(threads);
+    querySources = new Utilities((StatementCache) null, null, false).getMigrationQuery("BENCHLIB", "QRPGLESRC", 
+        Collections.<String>emptyList());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    migrator.closeEngine();
+    System.setOut(console);
+  }
+
+  /* Work list from the catalog, the path of every run. */
+  @Benchmark
+  @OperationsPerInvocation(MEMBERS)
+  public MigrationMetrics migrateMembers() throws Exception {
+    migrator.migrateMembers(work, "/bench", new HashMap<String, MigrationManifest>());
+    return migrator.getMetrics();
+  }
+
+  /* Legacy entry point: the members are collected from a query result set first. */
+  @Benchmark
+  @OperationsPerInvocation(MEMBERS)
+  public MigrationMetrics migrateMemberFromQuery() throws Exception {
+    migrator.migrateMember(querySources, "/bench/BENCHLIB", "BENCHLIB");
+    return migrator.getMetrics();
+  }
+}
@@ -0,0 +1,164 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/*
+ * Every member goes into one compressed archive, or one git fast-import stream, instead of its own stream file.
+ * Migration threads only queue the content; a single writer thread owns the archive stream,
+ * so entries never interleave and compression does not hold the migration threads.
+ * The bounded queue holds the migration back when the writer falls behind.
+ */
+public class ArchiveSink implements OutputSink {
+  public static final String FORMAT_ZIP = "zip";
+  public static final String FORMAT_TAR_GZ = "tar.gz";
+  public static final String FORMAT_FAST_IMPORT = "fast-import";
+  public static final String GIT_REF = "refs/heads/main";
+  private static final int QUEUE_SIZE = 256;
+  private static final Entry END = new Entry(null, null);
+
+  private final String archive;
+  private final String format;
+  private final long createdAt = System.currentTimeMillis();
+  private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+  private final Thread writer;
+  private volatile IOException failure;
+  private boolean closed = false;
+  private volatile String commitAuthor = "SourceMigrator <migrator@localhost>";
+  private volatile String commitMessage = "Migrate sources";
+  private volatile long commitTime = createdAt;
+
+  private static class Entry {
+    final String name;
+    final byte[] content;
+
+    Entry(String name, byte[] content) {
+      this.name = name;
+      this.content = content;
+    }
+  }
+
+  public ArchiveSink(Path archive, String format) throws IOException {
+    this(Files.newOutputStream(archive), archive.toString(), format);
+  }
+
+  /* Archive written to any stream, like an IFS file opened through the host servers. Name is for messages. */
+  public ArchiveSink(OutputStream stream, String archive, String format) {
+    if (!isFormat(format)) {
+      throw new IllegalArgumentException("Invalid archive format: " + format);
+    }
+    this.archive = archive;
+    this.format = format;
+
+    OutputStream file = new BufferedOutputStream(stream, 64 * 1024);
+    this.writer = new Thread(() -> drain(file), "migrator-archive");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  public static boolean isFormat(String format) {
+    return FORMAT_ZIP.equals(format) || FORMAT_TAR_GZ.equals(format) || FORMAT_FAST_IMPORT.equals(format);
+  }
+
+  /* Fast-import only: the commit written at the end. Author is "Name <email>". */
+  public void setCommit(String author, String message, long timeMillis) {
+    this.commitAuthor = author;
+    this.commitMessage = message;
+    this.commitTime = timeMillis;
+  }
+
+  /* Archive file for an output path: the path itself if it already has the extension. */
+  public static Path getArchivePath(String outDir, String format) {
+    return Paths.get(outDir.endsWith("." + format) ? outDir : outDir + "." + format);
+  }
+
+  @Override
+  public String write(String entryName, byte[] content) throws IOException {
+    if (failure != null) throw new IOException("Could not write " + archive, failure);
+    try {
+      queue.put(new Entry(entryName, content));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted queuing " + entryName, e);
+    }
+    return archive + "/" + entryName;
+  }
+
+  private void drain(OutputStream file) {
+    try {
+      if (FORMAT_ZIP.equals(format)) {
+        try (ZipOutputStream zip = new ZipOutputStream(file)) {
+          Entry entry;
+          while ((entry = queue.take()) != END) {
+            ZipEntry zipEntry = new ZipEntry(entry.name);
+            zipEntry.setTime(createdAt);
+            zip.putNextEntry(zipEntry);
+            zip.write(entry.content);
+            zip.closeEntry();
+          }
+        }
+      } else if (FORMAT_FAST_IMPORT.equals(format)) {
+        try (OutputStream stream = file) {
+          FastImportWriter git = new FastImportWriter(stream);
+          Entry entry;
+          while ((entry = queue.take()) != END) {
+            git.blob(entry.name, entry.content);
+          }
+          git.commit(GIT_REF, commitAuthor, commitTime, commitMessage);
+        }
+      } else {
+        try (TarOutputStream tar = new TarOutputStream(new GZIPOutputStream(file, 64 * 1024))) {
+          Entry entry;
+          while ((entry = queue.take()) != END) {
+            tar.putEntry(entry.name, entry.content, createdAt);
+          }
+          tar.finish();
+        }
+      }
+    } catch (IOException e) {
+      failure = e;
+      discard();
+    } catch (InterruptedException e) {
+      failure = new IOException("Archive writer interrupted", e);
+    }
+  }
+
+  /* After a failure, keeps taking until the end so no migration thread stays blocked on a full queue. */
+  private void discard() {
+    try {
+      while (queue.take() != END) {
+        // Dropped, the next write or the close reports the failure
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /* Waits for the writer to empty the queue and finish the archive. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) return;
+    closed = true;
+
+    try {
+      while (writer.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+        // Writer still draining
+      }
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted finishing " + archive, e);
+    }
+    if (failure != null) throw failure;
+  }
+}
@@ -0,0 +1,190 @@
+package com.github.kraudy.migrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Queues commands and sends each group as a single query over the QSYS2.QCMDEXC scalar function:
+ *   SELECT N, QSYS2.QCMDEXC(CMD) FROM (VALUES (1, ?), (2, ?), ...) AS C(N, CMD)
+ * one host server round trip per batch, with a row per command: 1 if it ran, -1 if it failed.
+ * JDBC batching would not do it, jt400 only blocks INSERT, UPDATE, DELETE and MERGE and sends a
+ * batched CALL row by row.
+ * The scalar function does not tell why a command failed, so each failed command runs again on its
+ * own through CALL QSYS2.QCMDEXC(?), whose SQL error carries the CL escape message.
+ *
+ * Callers wait for the batch of their command, so a batch never holds more commands than the
+ * threads that send them: size it to the engine threads. A partial batch is sent when the oldest
+ * queued command waited LINGER_MILLIS.
+ * The connection is the executor's own, catalog queries on another connection never wait on a batch.
+ */
+public class BatchCommandExecutor implements CommandExecutor {
+  public static final long LINGER_MILLIS = 50;
+  private static final String QCMDEXC = "CALL QSYS2.QCMDEXC(?)";
+  private static final Pattern MESSAGE_ID = Pattern.compile("\\b[A-Z]{3}[0-9A-F]{4}\\b");
+
+  private final Connection connection;
+  private final int batchSize;
+  private final ScheduledExecutorService lingerFlusher;
+  private final Object sendLock = new Object();
+  private final Map<Integer, PreparedStatement> batchQueries = new HashMap<>(); // By commands in the batch
+  private List<Pending> queued = new ArrayList<>();
+  private PreparedStatement qcmdexc;
+
+  private static class Pending {
+    final String command;
+    final CompletableFuture<CommandResult> result = new CompletableFuture<>();
+
+    Pending(String command) {
+      this.command = command;
+    }
+  }
+
+  /* Takes the connection over, close() closes it. */
+  public BatchCommandExecutor(Connection connection, int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("Batch size must be greater than zero");
+
+    this.connection = connection;
+    this.batchSize = batchSize;
+    this.lingerFlusher = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "migrator-batch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.lingerFlusher.scheduleWithFixedDelay(this::flush, LINGER_MILLIS, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /* Queues the command and waits until the batch holding it was sent. */
+  @Override
+  public CommandResult run(String commandStr) {
+    Pending pending = new Pending(commandStr);
+    List<Pending> full = null;
+
+    synchronized (this) {
+      queued.add(pending);
+      if (queued.size() >= batchSize) {
+        full = queued;
+        queued = new ArrayList<>();
+      }
+    }
+
+    if (full != null) send(full); // The caller that fills the batch sends it
+    return pending.result.join();
+  }
+
+  /* Sends whatever is queued, full or not. */
+  public void flush() {
+    List<Pending> batch;
+    synchronized (this) {
+      if (queued.isEmpty()) return;
+      batch = queued;
+      queued = new ArrayList<>();
+    }
+    send(batch);
+  }
+
+  static String getBatchQuery(int commands) {
+    StringBuilder sql = new StringBuilder("SELECT N, QSYS2.QCMDEXC(CMD) FROM (VALUES ");
+    for (int i = 1; i <= commands; i++) {
+      if (i > 1) sql.append(", ");
+      sql.append("(").append(i).append(", CAST(? AS VARCHAR(32000)))");
+    }
+    return sql.append(") AS C(N, CMD)").toString();
+  }
+
+  private void send(List<Pending> batch) {
+    synchronized (sendLock) {
+      List<Pending> failed = new ArrayList<>();
+      try {
+        PreparedStatement query = batchQueries.get(batch.size());
+        if (query == null) {
+          query = connection.prepareStatement(getBatchQuery(batch.size()));
+          batchQueries.put(batch.size(), query);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          query.setString(i + 1, batch.get(i).command);
+        }
+
+        boolean[] answered = new boolean[batch.size()];
+        try (ResultSet results = query.executeQuery()) {
+          while (results.next()) {
+            int index = results.getInt(1) - 1;
+            if (index < 0 || index >= batch.size()) continue;
+            answered[index] = true;
+            Pending pending = batch.get(index);
+            if (results.getInt(2) == 1) {
+              pending.result.complete(CommandResult.ok(pending.command));
+            } else {
+              failed.add(pending);
+            }
+          }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          if (!answered[i]) failed.add(batch.get(i)); // The row is missing, the call tells what happened
+        }
+
+      } catch (SQLException e) {
+        for (Pending pending : batch) {
+          if (!pending.result.isDone()) pending.result.complete(CommandResult.failed(pending.command, e));
+        }
+        return;
+      }
+
+      for (Pending pending : failed) {
+        pending.result.complete(runAlone(pending.command));
+      }
+    }
+  }
+
+  /* A command that failed in a batch, run again on its own for its escape message. */
+  private CommandResult runAlone(String commandStr) {
+    try {
+      if (qcmdexc == null) qcmdexc = connection.prepareStatement(QCMDEXC);
+      qcmdexc.setString(1, commandStr);
+      qcmdexc.execute();
+      return CommandResult.ok(commandStr);
+    } catch (SQLException e) {
+      return failure(commandStr, e);
+    }
+  }
+
+  /* QCMDEXC reports the CL escape message inside the SQL error text. */
+  private CommandResult failure(String commandStr, SQLException e) {
+    String text = e.getMessage() == null ? e.toString() : e.getMessage();
+    Matcher matcher = MESSAGE_ID.matcher(text);
+    String messageId = matcher.find() ? matcher.group() : "SQL" + e.getErrorCode();
+    return CommandResult.failed(commandStr, messageId, text);
+  }
+
+  @Override
+  public void close() {
+    lingerFlusher.shutdown();
+    flush();
+    synchronized (sendLock) {
+      try {
+        for (PreparedStatement query : batchQueries.values()) query.close();
+        if (qcmdexc != null) qcmdexc.close();
+        connection.close();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+      batchQueries.clear();
+      qcmdexc = null;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.github.kraudy.migrator;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/*
+ * Where the migration learns what the system has: the source members of the libraries and
+ * the few system values it reports. The live implementation queries QSYS2 over JDBC.
+ */
+public interface CatalogSource {
+
+  /* Source members of the libraries. Generic names like APP* are expanded by the source. */
+  SourceCatalog load(List<String> libraryNames) throws SQLException;
+
+  /* 
+   * Cheap summary of the members of the libraries that changes whenever a member is added, edited
+   * or removed. A watch only loads the catalog again when it differs. Null if the source has none.
+   */
+  default String probe(List<String> libraryNames) throws SQLException {
+    return null;
+  }
+
+  String getSystemName() throws SQLException;
+
+  String getCcsid() throws SQLException;
+}
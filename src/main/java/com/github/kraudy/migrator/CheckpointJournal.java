@@ -0,0 +1,155 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Append-only record of the members a run finished, kept in the output dir so an interrupted run
+ * can pick up where it stopped. Lines are: LIBRARY/SOURCEPF/MEMBER.TYPE <TAB> last source update
+ * Completions are queued and written in batches, at most FLUSH_MILLIS apart, then forced to disk.
+ * A crash loses at most the last batch, those members are just copied again.
+ */
+public class CheckpointJournal implements AutoCloseable {
+  public static final String FILE_NAME = ".migrator-journal";
+  private static final String HEADER = "# SourceMigrator journal: library/sourcePf/member.type\tlast source update";
+  static final long FLUSH_MILLIS = 1000;
+
+  private final Path path;
+  private final Map<String, String> done = new ConcurrentHashMap<>(); // Of the run being resumed
+  private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+  private final FileChannel channel;
+  private final BufferedWriter writer;
+  private final ScheduledExecutorService flusher;
+  private IOException failure; // First write error, reported on close
+
+  private CheckpointJournal(Path path, boolean resume) throws IOException {
+    this.path = path;
+    if (resume && Files.exists(path)) read();
+
+    if (resume) {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } else {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    if (channel.size() == 0) {
+      writer.write(HEADER);
+      writer.newLine();
+    } else {
+      writer.newLine(); // Ends a line cut by a crash, the blank line is skipped on read
+    }
+
+    flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "migrator-journal");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /* New journal in the output dir. An earlier one is replaced: this run starts from zero. */
+  public static CheckpointJournal create(Path outDir) throws IOException {
+    return new CheckpointJournal(outDir.resolve(FILE_NAME), false);
+  }
+
+  /* Loads what an earlier run finished and keeps appending to it. */
+  public static CheckpointJournal resume(Path outDir) throws IOException {
+    return new CheckpointJournal(outDir.resolve(FILE_NAME), true);
+  }
+
+  private void read() throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) continue;
+        int tab = line.indexOf('\t');
+        if (tab < 0) continue; // Cut by a crash
+        done.put(line.substring(0, tab), line.substring(tab + 1));
+      }
+    }
+  }
+
+  public static String key(String library, String sourcePf, String member, String sourceType) {
+    return library + "/" + sourcePf + "/" + member + "." + sourceType;
+  }
+
+  /* Members the resumed run finished. */
+  public int size() {
+    return done.size();
+  }
+
+  /* True if the resumed run finished the member and it has not changed since. */
+  public boolean isDone(String key, String lastUpdate) {
+    String journaled = done.get(key);
+    return journaled != null && journaled.equals(lastUpdate == null ? "" : lastUpdate);
+  }
+
+  /* Queues the member for the next batch. Safe from every migration thread. */
+  public void add(String key, String lastUpdate) {
+    pending.add(key + "\t" + (lastUpdate == null ? "" : lastUpdate));
+  }
+
+  /* Writes the queued members and forces them to disk. */
+  public synchronized void flush() throws IOException {
+    if (failure != null) throw failure;
+    if (pending.isEmpty()) return;
+
+    List<String> batch = new ArrayList<>();
+    String line;
+    while ((line = pending.poll()) != null) batch.add(line);
+    try {
+      for (String entry : batch) {
+        writer.write(entry);
+        writer.newLine();
+      }
+      writer.flush();
+      channel.force(false);
+    } catch (IOException e) {
+      failure = e;
+      throw e;
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (IOException e) {
+      // Kept in failure, close reports it
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      flush();
+    } finally {
+      writer.close();
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+}
@@ -0,0 +1,15 @@
+package com.github.kraudy.migrator;
+
+/*
+ * Runs CL commands on the system.
+ * Implementations must be safe to call from many migration threads at once.
+ */
+public interface CommandExecutor extends AutoCloseable {
+
+  /* Runs the command and reports the outcome. Failures are returned, not thrown. */
+  CommandResult run(String commandStr);
+
+  @Override
+  default void close() {
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.kraudy.migrator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ibm.as400.access.AS400Message;
+
+/*
+ * Outcome of a CL command: success flag plus the messages the system returned.
+ */
+public class CommandResult {
+  /* Failures that come out the same however often the command is sent: missing objects and authority. */
+  private static final Set<String> PERMANENT = new HashSet<>(Arrays.asList(
+      "CPF3141", // Member not found
+      "CPF9801", "CPF9812", "CPF9815", "CPFA0A9", // Object, file or member not found
+      "CPF9802", "CPF9820", "CPF9822", "CPFA09C", // Not authorized
+      "CPF2105", "CPF2110")); // Library or object does not exist
+  private static final Pattern MESSAGE_ID = Pattern.compile("\\b([A-Z]{3}[0-9A-F]{4})\\b");
+
+  private final String command;
+  private final boolean success;
+  private final List<String> messageIds;
+  private final List<String> messages;
+  private final Exception error;
+
+  public CommandResult(String command, boolean success, List<String> messageIds, List<String> messages, Exception error) {
+    this.command = command;
+    this.success = success;
+    this.messageIds = Collections.unmodifiableList(messageIds);
+    this.messages = Collections.unmodifiableList(messages);
+    this.error = error;
+  }
+
+  public static CommandResult of(String command, boolean success, AS400Message[] messageList) {
+    List<String> ids = new ArrayList<>();
+    List<String> texts = new ArrayList<>();
+    if (messageList != null) {
+      for (AS400Message msg : messageList) {
+        ids.add(msg.getID());
+        texts.add(msg.getID() + ": " + msg.getText());
+      }
+    }
+    return new CommandResult(command, success, ids, texts, null);
+  }
+
+  public static CommandResult ok(String command) {
+    return new CommandResult(command, true, new ArrayList<String>(), new ArrayList<String>(), null);
+  }
+
+  public static CommandResult failed(String command, String messageId, String message) {
+    List<String> ids = new ArrayList<>();
+    List<String> texts = new ArrayList<>();
+    ids.add(messageId);
+    texts.add(messageId + ": " + message);
+    return new CommandResult(command, false, ids, texts, null);
+  }
+
+  /* Exceptions carry no message list, the ID is taken from their text when there is one. */
+  public static CommandResult failed(String command, Exception error) {
+    List<String> ids = new ArrayList<>();
+    List<String> texts = new ArrayList<>();
+    if (error.getMessage() != null) {
+      Matcher matcher = MESSAGE_ID.matcher(error.getMessage());
+      if (matcher.find()) ids.add(matcher.group(1));
+    }
+    texts.add(error.toString());
+    return new CommandResult(command, false, ids, texts, error);
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  public List<String> getMessageIds() {
+    return messageIds;
+  }
+
+  public List<String> getMessages() {
+    return messages;
+  }
+
+  /* True if sending it again later can succeed: lock waits, busy or ended host jobs, broken connections. */
+  public boolean isRetryable() {
+    if (success) return false;
+    for (String id : messageIds) {
+      if (PERMANENT.contains(id)) return false;
+    }
+    return true;
+  }
+
+  /* Exception raised while sending the command, null if the system answered. */
+  public Exception getError() {
+    return error;
+  }
+}
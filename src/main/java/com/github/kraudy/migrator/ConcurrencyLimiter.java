@@ -0,0 +1,130 @@
+package com.github.kraudy.migrator;
+
+/*
+ * Bounds the members in flight. A fixed limiter is a plain counting semaphore. An adaptive one
+ * moves its limit with AIMD, like TCP congestion control: while the latency of the host stays near
+ * its baseline, the lowest latency seen lately, the limit grows by about one per round trip. When the
+ * latency climbs past tolerance times the baseline or the host fails a call it is cut by backoffRatio.
+ * So the run settles at the most concurrent jobs the partition takes without lock waits piling up.
+ */
+public class ConcurrencyLimiter {
+  static final double TOLERANCE = 2.0; // Latency over twice the baseline means the host is queueing
+  static final double BACKOFF_RATIO = 0.75;
+  private static final double WEIGHT = 0.05; // Of each sample in the recent latency, smooths out single slow calls
+  private static final int MIN_SAMPLES = 20; // Before this, the recent latency is too noisy to be a baseline
+  private static final int WINDOW = 1000; // Samples the baseline is the lowest of
+
+  private final boolean adaptive;
+  private final int minLimit;
+  private final int maxLimit;
+
+  private double limit;
+  private int inFlight = 0;
+  private double latency = 0; // Recent latency in nanos
+  private double baseline = 0; // Lowest recent latency of this window and the end of the last one. 0 until known
+  private double windowLowest = Double.MAX_VALUE;
+  private long samples = 0;
+  private long sinceBackoff = 0; // Samples
+  private int lowestLimit;
+  private int highestLimit;
+
+  private ConcurrencyLimiter(boolean adaptive, int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("Limits must be 1 <= min <= max");
+    this.adaptive = adaptive;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.lowestLimit = (int) limit;
+    this.highestLimit = (int) limit;
+  }
+
+  public static ConcurrencyLimiter fixed(int limit) {
+    return new ConcurrencyLimiter(false, limit, limit, limit);
+  }
+
+  /* Starts at initialLimit and moves between 1 and maxLimit. */
+  public static ConcurrencyLimiter adaptive(int initialLimit, int maxLimit) {
+    return new ConcurrencyLimiter(true, initialLimit, 1, maxLimit);
+  }
+
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= (int) limit) wait();
+    inFlight++;
+  }
+
+  public synchronized void release() {
+    inFlight--;
+    notifyAll();
+  }
+
+  /* Waits for every acquired slot to be released. */
+  public synchronized void awaitIdle() {
+    boolean interrupted = false;
+    while (inFlight > 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /* Outcome of one call to the host. overloaded is a failure that more load would only make worse. */
+  public synchronized void record(long latencyNanos, boolean overloaded) {
+    if (!adaptive) return;
+    sinceBackoff++;
+
+    if (overloaded) {
+      backoff();
+      return;
+    }
+
+    samples++;
+    latency += (latencyNanos - latency) * Math.max(WEIGHT, 1.0 / samples); // Plain mean of the first samples
+    if (samples < MIN_SAMPLES) return;
+
+    windowLowest = Math.min(windowLowest, latency);
+    baseline = baseline == 0 ? windowLowest : Math.min(baseline, windowLowest);
+    if (samples % WINDOW == 0) {
+      baseline = windowLowest; // Forgets older lows, so a host that got slower for good becomes the norm
+      windowLowest = latency;
+    }
+
+    if (latency > baseline * TOLERANCE) {
+      backoff();
+    } else if (inFlight * 2 >= limit) { // Only grow when the limit is what holds the run back
+      limit = Math.min(maxLimit, limit + 1 / limit);
+      highestLimit = Math.max(highestLimit, (int) limit);
+      notifyAll();
+    }
+  }
+
+  /* 
+   * At most once per window of calls: the calls already in flight were sent before the last cut,
+   * and the recent latency needs that many samples to forget the slow ones.
+   */
+  private void backoff() {
+    if (samples > 0 && sinceBackoff < Math.max(limit, 1 / WEIGHT)) return;
+    sinceBackoff = 0;
+
+    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    lowestLimit = Math.min(lowestLimit, (int) limit);
+  }
+
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getLowestLimit() {
+    return lowestLimit;
+  }
+
+  public synchronized int getHighestLimit() {
+    return highestLimit;
+  }
+}
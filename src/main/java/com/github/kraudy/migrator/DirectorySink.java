@@ -0,0 +1,85 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.IFSFile;
+
+/*
+ * One stream file per member under the output dir, through NIO. On IBM i that is the IFS,
+ * anywhere else the local file system. A missing source PF dir is created on first write.
+ * PASE tags a new file with the CCSID of the JVM file.encoding, usually 819, so on the IFS every
+ * file is tagged 1208 after the write, like CPYTOSTMF STMFCCSID(1208) does. Otherwise compilers and
+ * CPYFRMSTMF would read the UTF-8 bytes as Latin-1.
+ */
+public class DirectorySink implements OutputSink {
+  public static final int UTF8_CCSID = 1208;
+
+  /* Sets the CCSID tag of a stream file just written. */
+  public interface CcsidTagger {
+    void tag(String streamFile, int ccsid) throws IOException;
+  }
+
+  private final Path root;
+  private final CcsidTagger tagger; // Null on file systems without tags
+
+  public DirectorySink(Path root) {
+    this(root, null);
+  }
+
+  public DirectorySink(Path root, CcsidTagger tagger) {
+    this.root = root;
+    this.tagger = tagger;
+  }
+
+  /* Tags through the file host server, on systems borrowed from the pool. */
+  public static CcsidTagger onIfs(SystemPool systems) {
+    return (streamFile, ccsid) -> {
+      AS400 system;
+      try {
+        system = systems.borrow();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for a system to tag " + streamFile, e);
+      }
+      try {
+        if (!new IFSFile(system, streamFile).setCCSID(ccsid)) throw new IOException("Could not tag " + streamFile + " with CCSID " + ccsid);
+      } finally {
+        systems.release(system);
+      }
+    };
+  }
+
+  @Override
+  public String write(String entryName, byte[] content) throws IOException {
+    Path streamFile = root.resolve(entryName);
+    try {
+      writeFile(streamFile, content);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(streamFile.getParent());
+      writeFile(streamFile, content);
+    }
+    if (tagger != null) tagger.tag(streamFile.toString(), UTF8_CCSID);
+    return streamFile.toString();
+  }
+
+  private void writeFile(Path streamFile, byte[] content) throws IOException {
+    try (FileChannel channel = FileChannel.open(streamFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,197 @@
+package com.github.kraudy.migrator;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.as400.access.CharConverter;
+
+/*
+ * EBCDIC <-> UTF-8 for the single byte code pages source members are kept in. Each CCSID gets two
+ * lookup tables, built once from the jt400 tables so the result is the one of the host: EBCDIC byte
+ * to its UTF-8 bytes, and char to EBCDIC byte. Conversions go from one caller buffer to another and
+ * allocate nothing, so a member is converted record by record on the same buffers.
+ */
+public final class EbcdicConverter {
+  public static final byte BLANK = 0x40;
+  public static final byte SUB = 0x3F; // Takes the place of what the code page has no byte for
+  private static final int[] CCSIDS = { 37, 273, 277, 278, 280, 284, 285, 297, 500, 871,
+      1140, 1141, 1142, 1143, 1144, 1145, 1146, 1147, 1148, 1149 };
+  private static final Map<Integer, EbcdicConverter> converters = new ConcurrentHashMap<>();
+
+  private final int ccsid;
+  private final byte[] utf8 = new byte[256 * 3]; // UTF-8 of each EBCDIC byte, 3 slots each: every one is in the BMP
+  private final byte[] utf8Length = new byte[256];
+  private final byte[][] ebcdic = new byte[256][]; // High byte of the char, then low byte. A missing page is all SUB
+
+  private EbcdicConverter(int ccsid) throws UnsupportedEncodingException {
+    this.ccsid = ccsid;
+    byte[] all = new byte[256];
+    for (int i = 0; i < 256; i++) all[i] = (byte) i;
+    String chars = new CharConverter(ccsid).byteArrayToString(all, 0, all.length);
+
+    for (int b = 0; b < 256; b++) {
+      char c = chars.charAt(b);
+      int slot = b * 3;
+      if (c < 0x80) {
+        utf8[slot] = (byte) c;
+        utf8Length[b] = 1;
+      } else if (c < 0x800) {
+        utf8[slot] = (byte) (0xC0 | c >> 6);
+        utf8[slot + 1] = (byte) (0x80 | c & 0x3F);
+        utf8Length[b] = 2;
+      } else {
+        utf8[slot] = (byte) (0xE0 | c >> 12);
+        utf8[slot + 1] = (byte) (0x80 | c >> 6 & 0x3F);
+        utf8[slot + 2] = (byte) (0x80 | c & 0x3F);
+        utf8Length[b] = 3;
+      }
+
+      byte[] page = ebcdic[c >> 8];
+      if (page == null) {
+        page = new byte[256];
+        Arrays.fill(page, SUB);
+        ebcdic[c >> 8] = page;
+      }
+      page[c & 0xFF] = (byte) b;
+    }
+  }
+
+  public static boolean isSupported(int ccsid) {
+    for (int supported : CCSIDS) {
+      if (supported == ccsid) return true;
+    }
+    return false;
+  }
+
+  /* Tables are built on the first use of each CCSID and shared from then on. */
+  public static EbcdicConverter forCcsid(int ccsid) {
+    if (!isSupported(ccsid)) throw new IllegalArgumentException("No single byte EBCDIC table for CCSID " + ccsid);
+    return converters.computeIfAbsent(ccsid, key -> {
+      try {
+        return new EbcdicConverter(key);
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalArgumentException("jt400 has no table for CCSID " + key, e);
+      }
+    });
+  }
+
+  public int getCcsid() {
+    return ccsid;
+  }
+
+  /* Room toUtf8 needs for length EBCDIC bytes. */
+  public static int maxUtf8Length(int length) {
+    return length * 3;
+  }
+
+  /* Returns the bytes written to dst. */
+  public int toUtf8(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+    int out = dstOffset;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int b = src[i] & 0xFF;
+      int slot = b * 3;
+      int n = utf8Length[b];
+      dst[out] = utf8[slot];
+      if (n > 1) {
+        dst[out + 1] = utf8[slot + 1];
+        if (n > 2) dst[out + 2] = utf8[slot + 2];
+      }
+      out += n;
+    }
+    return out - dstOffset;
+  }
+
+  /*
+   * A source record as a stream file line, the framing of CPYTOSTMF ENDLINFMT(*LF): trailing blanks removed
+   * and LF appended. dst needs maxUtf8Length(length) + 1 bytes. Returns the bytes written.
+   */
+  public int toUtf8Line(byte[] record, int offset, int length, byte[] dst, int dstOffset) {
+    int end = offset + length;
+    while (end > offset && record[end - 1] == BLANK) end--;
+    int written = toUtf8(record, offset, end - offset, dst, dstOffset);
+    dst[dstOffset + written] = '\n';
+    return written + 1;
+  }
+
+  /*
+   * Every record of a block read from a source PF: the data starts at dataOffset of each record, after
+   * SRCSEQ and SRCDAT. dst needs maxUtf8Length(length) bytes plus one per record. Returns the bytes written.
+   */
+  public int toUtf8Lines(byte[] records, int offset, int length, int recordLength, int dataOffset, byte[] dst, int dstOffset) {
+    if (length % recordLength != 0) throw new IllegalArgumentException("Block of " + length + " bytes is not made of " + recordLength + " byte records");
+    int out = dstOffset;
+    for (int record = offset, end = offset + length; record < end; record += recordLength) {
+      out += toUtf8Line(records, record + dataOffset, recordLength - dataOffset, dst, out);
+    }
+    return out - dstOffset;
+  }
+
+  /*
+   * UTF-8 to EBCDIC. Chars the code page does not have, malformed sequences and chars beyond the BMP
+   * become SUB. dst needs length bytes. Returns the bytes written.
+   */
+  public int fromUtf8(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+    return encode(src, offset, length, dst, dstOffset, Integer.MAX_VALUE);
+  }
+
+  /*
+   * A stream file line, a CR LF or LF at its end is dropped, as a source record data of recordLength bytes
+   * padded with blanks. Returns the bytes of the line before the padding, -1 if it is longer than the record:
+   * the record then holds the part that fits.
+   */
+  public int toRecord(byte[] line, int offset, int length, byte[] record, int recordOffset, int recordLength) {
+    if (length > 0 && line[offset + length - 1] == '\n') length--;
+    if (length > 0 && line[offset + length - 1] == '\r') length--;
+
+    int written = encode(line, offset, length, record, recordOffset, recordOffset + recordLength);
+    int data = written < 0 ? recordLength : written;
+    Arrays.fill(record, recordOffset + data, recordOffset + recordLength, BLANK);
+    return written;
+  }
+
+  /* Stops at limit, an index of dst, and returns -1 if the text goes on past it. */
+  private int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int limit) {
+    int out = dstOffset;
+    int i = offset;
+    int end = offset + length;
+    while (i < end) {
+      int b = src[i] & 0xFF;
+      int c = -1; // Malformed until proven otherwise
+      int size = 1;
+      if (b < 0x80) {
+        c = b;
+      } else if (b >= 0xC2 && b < 0xE0) {
+        if (isContinuation(src, i + 1, end)) {
+          c = (b & 0x1F) << 6 | src[i + 1] & 0x3F;
+          size = 2;
+        }
+      } else if (b >= 0xE0 && b < 0xF0) {
+        if (isContinuation(src, i + 1, end) && isContinuation(src, i + 2, end)) {
+          c = (b & 0x0F) << 12 | (src[i + 1] & 0x3F) << 6 | src[i + 2] & 0x3F;
+          if (c < 0x800) c = -1; // Overlong
+          size = 3;
+        }
+      } else if (b >= 0xF0 && b < 0xF5) {
+        if (isContinuation(src, i + 1, end) && isContinuation(src, i + 2, end) && isContinuation(src, i + 3, end)) {
+          size = 4; // Beyond the BMP, no single byte code page has it
+        }
+      }
+      i += size;
+
+      if (out >= limit) return -1;
+      if (c < 0) {
+        dst[out++] = SUB;
+      } else {
+        byte[] page = ebcdic[c >> 8];
+        dst[out++] = page == null ? SUB : page[c & 0xFF];
+      }
+    }
+    return out - dstOffset;
+  }
+
+  private static boolean isContinuation(byte[] src, int index, int end) {
+    return index < end && (src[index] & 0xC0) == 0x80;
+  }
+}
@@ -0,0 +1,51 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Writes a git fast-import stream: one blob per member as it arrives, then a single commit
+ * that puts every blob at its path. Pipe it to git fast-import to get a repository without
+ * a working tree ever touching the disk.
+ */
+public class FastImportWriter {
+  private final OutputStream out;
+  private final List<String> fileLines = new ArrayList<>(); // "M 100644 :mark path" of the commit
+  private int marks = 0;
+
+  public FastImportWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /* Writes the content as a blob now and remembers it for the commit. */
+  public void blob(String path, byte[] content) throws IOException {
+    int mark = ++marks;
+    write("blob\nmark :" + mark + "\ndata " + content.length + "\n");
+    out.write(content);
+    write("\n");
+    fileLines.add("M 100644 :" + mark + " " + path + "\n");
+  }
+
+  /* One commit with every blob written so far. Author is "Name <email>", time in epoch millis. */
+  public void commit(String ref, String author, long timeMillis, String message) throws IOException {
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    String ident = author + " " + (timeMillis / 1000) + " +0000\n";
+
+    write("commit " + ref + "\nmark :" + (++marks) + "\n");
+    write("author " + ident);
+    write("committer " + ident);
+    write("data " + messageBytes.length + "\n");
+    out.write(messageBytes);
+    write("\n");
+    for (String line : fileLines) write(line);
+    write("\n");
+    out.flush();
+  }
+
+  private void write(String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
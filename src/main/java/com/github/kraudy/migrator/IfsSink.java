@@ -0,0 +1,49 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400SecurityException;
+import com.ibm.as400.access.IFSFileOutputStream;
+
+/*
+ * One stream file per member on the IFS, written through the file host server on systems
+ * borrowed from the pool. Used when the migrator runs off the IBM i and the output stays on the IFS.
+ * Stream files are tagged with CCSID 1208, like CPYTOSTMF STMFCCSID(1208) does.
+ */
+public class IfsSink implements OutputSink {
+  private static final int UTF8_CCSID = 1208;
+
+  private final SystemPool systems;
+  private final String root;
+
+  public IfsSink(SystemPool systems, String root) {
+    this.systems = systems;
+    this.root = root;
+  }
+
+  @Override
+  public String write(String entryName, byte[] content) throws IOException {
+    String streamFile = root + "/" + entryName;
+    AS400 system;
+    try {
+      system = systems.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a system to write " + streamFile, e);
+    }
+
+    try (IFSFileOutputStream out = new IFSFileOutputStream(system, streamFile, IFSFileOutputStream.SHARE_ALL, false, UTF8_CCSID)) {
+      out.write(content);
+    } catch (AS400SecurityException e) {
+      throw new IOException("Not authorized to write " + streamFile, e);
+    } finally {
+      systems.release(system);
+    }
+    return streamFile;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,89 @@
+package com.github.kraudy.migrator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock free log-linear histogram of latencies in microseconds.
+ * Each power of two is split in 8 buckets, so percentiles are within 12.5% of the real value.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(0);
+
+  public void record(long micros) {
+    if (micros < 0) micros = 0;
+    counts.incrementAndGet(index(micros));
+    count.increment();
+    sum.add(micros);
+    min.accumulateAndGet(micros, Math::min);
+    max.accumulateAndGet(micros, Math::max);
+  }
+
+  /* Adds every latency of the other histogram, as if they were recorded here. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long bucket = other.counts.get(i);
+      if (bucket > 0) counts.addAndGet(i, bucket);
+    }
+    if (other.getCount() == 0) return;
+    count.add(other.getCount());
+    sum.add(other.sum.sum());
+    min.accumulateAndGet(other.getMin(), Math::min);
+    max.accumulateAndGet(other.getMax(), Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMin() {
+    return getCount() == 0 ? 0 : min.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long total = getCount();
+    return total == 0 ? 0 : (double) sum.sum() / total;
+  }
+
+  /* Upper bound of the bucket holding the given percentile (0-100). */
+  public long getPercentile(double percentile) {
+    long total = getCount();
+    if (total == 0) return 0;
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return Math.min(upperBound(i), getMax());
+    }
+    return getMax();
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) return index;
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = index % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+  }
+}
@@ -0,0 +1,17 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+
+/*
+ * Reads the content of a source member inside the JVM, without CPYTOSTMF.
+ * The content is returned as the stream file CPYTOSTMF STMFCCSID(1208) ENDLINFMT(*LF) would write:
+ * UTF-8 source data with trailing blanks removed and one LF per record.
+ */
+public interface MemberReader extends AutoCloseable {
+
+  byte[] read(String library, String sourcePf, String member) throws IOException;
+
+  @Override
+  default void close() {
+  }
+}
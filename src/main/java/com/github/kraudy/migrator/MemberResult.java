@@ -0,0 +1,90 @@
+package com.github.kraudy.migrator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Outcome of one member of a run, as given to a MigrationListener.
+ */
+public class MemberResult {
+  public enum Status {
+    MIGRATED,  // Copied
+    FAILED,    // Not copied, see the message IDs
+    UNCHANGED, // Already current: --incremental or --changed-only
+    RESUMED    // Finished by the run that --resume continues
+  }
+
+  private final String library;
+  private final String sourcePf;
+  private final String member;
+  private final String sourceType;
+  private final String path;
+  private final Status status;
+  private final long durationNanos;
+  private final long bytes;
+  private final List<String> messageIds;
+
+  public MemberResult(String library, String sourcePf, String member, String sourceType, String path, Status status, 
+      long durationNanos, long bytes, List<String> messageIds) {
+    this.library = library;
+    this.sourcePf = sourcePf;
+    this.member = member;
+    this.sourceType = sourceType;
+    this.path = path;
+    this.status = status;
+    this.durationNanos = durationNanos;
+    this.bytes = bytes;
+    this.messageIds = messageIds == null ? Collections.<String>emptyList() : Collections.unmodifiableList(messageIds);
+  }
+
+  public String getLibrary() {
+    return library;
+  }
+
+  public String getSourcePf() {
+    return sourcePf;
+  }
+
+  public String getMember() {
+    return member;
+  }
+
+  public String getSourceType() {
+    return sourceType;
+  }
+
+  /* Stream file of the member: written, compared or read from. Archive entry name for archive formats. */
+  public String getPath() {
+    return path;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isSuccess() {
+    return status != Status.FAILED;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public long getDurationMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public List<String> getMessageIds() {
+    return messageIds;
+  }
+
+  @Override
+  public String toString() {
+    return status + " " + library + "/" + sourcePf + "/" + member + "." + sourceType + " " + path;
+  }
+}
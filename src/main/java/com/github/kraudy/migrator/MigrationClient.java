@@ -0,0 +1,95 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Library API of a running MigrationServer: the same migrations as setMigrationParams and
+ * setReverseMigrationParams with api(), on the sessions the server keeps signed on.
+ * One connection, requests are answered in order. Not for use by several threads at the same time.
+ */
+public class MigrationClient implements AutoCloseable {
+  private final Socket socket;
+  private final BufferedReader in;
+  private final Writer out;
+
+  public MigrationClient(int port, String token) throws IOException {
+    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    socket.setTcpNoDelay(true);
+    in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    try {
+      call("AUTH", token);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /* Connects to the server that wrote the server file of the user. */
+  public static MigrationClient connect() throws IOException {
+    return connect(MigrationServer.getDefaultServerFile());
+  }
+
+  public static MigrationClient connect(Path serverFile) throws IOException {
+    String[] fields = new String(Files.readAllBytes(serverFile), StandardCharsets.UTF_8).trim().split("\t");
+    if (fields.length != 2) throw new IOException("Not a server file: " + serverFile);
+    return new MigrationClient(Integer.parseInt(fields[0]), fields[1]);
+  }
+
+  /* Paths of the stream files written. An empty member list migrates the whole source PF. */
+  public List<String> migrate(String srcfile, List<String> members, String outDir) throws IOException {
+    String memberList = members.isEmpty() ? MigrationServer.ALL_MEMBERS : String.join(",", members);
+    List<String> reply = call("MIGRATE", srcfile, memberList, outDir);
+    return new ArrayList<>(reply.subList(1, reply.size()));
+  }
+
+  public String migrate(String srcfile, String member, String outDir) throws IOException {
+    List<String> paths = migrate(srcfile, Arrays.asList(member), outDir);
+    return paths.isEmpty() ? "" : paths.get(0);
+  }
+
+  public void reverseMigrate(String srcfile, String member, String streamFile) throws IOException {
+    call("REVERSE", srcfile, member, streamFile);
+  }
+
+  public void ping() throws IOException {
+    call("PING");
+  }
+
+  /* Sends one request line and reads its reply. ERR replies are thrown with the message of the server. */
+  private List<String> call(String... fields) throws IOException {
+    for (String field : fields) {
+      if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0) {
+        throw new IllegalArgumentException("Fields can not have tabs or line breaks: " + field);
+      }
+    }
+    out.write(String.join("\t", fields));
+    out.write('\n');
+    out.flush();
+
+    String line = in.readLine();
+    if (line == null) throw new IOException("The server closed the connection");
+    List<String> reply = Arrays.asList(line.split("\t", -1));
+    if (!"OK".equals(reply.get(0))) {
+      throw new IOException(reply.size() > 1 ? reply.get(1) : "Request failed: " + line);
+    }
+    return reply;
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
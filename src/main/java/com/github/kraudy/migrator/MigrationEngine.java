@@ -0,0 +1,112 @@
+package com.github.kraudy.migrator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Runs migration work on its own fixed size thread pool instead of the common ForkJoinPool,
+ * so the degree of parallelism is set by the user and not by the core count of the JVM.
+ */
+public class MigrationEngine implements AutoCloseable {
+  public static final int DEFAULT_THREADS = 8;
+
+  private final int threads;
+  private final ExecutorService executor;
+  private final CommandExecutor commands;
+  private ScheduledExecutorService scheduler; // Only started when some work is retried
+
+  public MigrationEngine(int threads, CommandExecutor commands) {
+    if (threads < 1) throw new IllegalArgumentException("Threads must be greater than zero");
+    if (commands == null) throw new IllegalArgumentException("Command executor can not be null");
+
+    this.threads = threads;
+    this.commands = commands;
+    this.executor = Executors.newFixedThreadPool(threads, new MigratorThreadFactory());
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /* Runs the command on the caller thread. */
+  public CommandResult run(String commandStr) {
+    return commands.run(commandStr);
+  }
+
+  /* Runs the command on one of the engine threads. */
+  public CompletableFuture<CommandResult> submit(String commandStr) {
+    return submit(() -> commands.run(commandStr));
+  }
+
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    return CompletableFuture.supplyAsync(task, executor);
+  }
+
+  /* Runs the task on one of the engine threads once the delay is over. No engine thread waits meanwhile. */
+  public <T> CompletableFuture<T> submitAfter(long delayMillis, Supplier<T> task) {
+    if (delayMillis <= 0) return submit(task);
+
+    CompletableFuture<T> future = new CompletableFuture<>();
+    getScheduler().schedule(() -> submit(task).whenComplete((value, error) -> {
+      if (error != null) future.completeExceptionally(error);
+      else future.complete(value);
+    }), delayMillis, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  private synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "migrator-retry");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return scheduler;
+  }
+
+  /* Waits for queued work to finish and releases the command backend. */
+  @Override
+  public void close() {
+    ScheduledExecutorService delayed;
+    synchronized (this) {
+      delayed = scheduler;
+    }
+    if (delayed != null) {
+      delayed.shutdown(); // Delayed work still runs
+      try {
+        delayed.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    } finally {
+      commands.close();
+    }
+  }
+
+  private static class MigratorThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable task) {
+      Thread thread = new Thread(task, "migrator-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
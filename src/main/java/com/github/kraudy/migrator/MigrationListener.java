@@ -0,0 +1,12 @@
+package com.github.kraudy.migrator;
+
+/*
+ * Told about every member as soon as it is finished, while the rest of the run goes on.
+ * Called from the migration threads, many at once: implementations must be thread safe and quick,
+ * anything slow should be handed to another thread.
+ */
+@FunctionalInterface
+public interface MigrationListener {
+
+  void memberFinished(MemberResult result);
+}
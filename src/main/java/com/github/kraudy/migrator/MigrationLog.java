@@ -0,0 +1,296 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/*
+ * Output of a run. Migration threads only add lines to a lock-free queue, one background writer
+ * drains it every DRAIN_MILLIS and prints each batch with a single write, so no thread ever waits
+ * on a slow PASE terminal. Lines go to the console from the console level up and, when there is
+ * one, to the log file with a timestamp.
+ *
+ * Instead of a line per member, the console shows a progress line: done/total, rate and ETA. The
+ * percentage and ETA follow the work, like the bytes, left rather than the members: a few big members
+ * take longer than many small ones.
+ * On a terminal it is redrawn in place on stderr. Piped, a plain line is printed now and then.
+ */
+public class MigrationLog implements AutoCloseable {
+  public enum Level {
+    ERROR,  // Always shown
+    INFO,   // Run level messages, shown by default
+    DETAIL, // One per member or dir, shown with -v and always written to the log file
+    DEBUG   // Commands and stack traces, shown with -x
+  }
+
+  private static final long DRAIN_MILLIS = 100;
+  private static final long PROGRESS_MILLIS = 250;
+  private static final long PIPED_PROGRESS_MILLIS = 10000;
+
+  private static class Line {
+    final long time = System.currentTimeMillis();
+    final Level level;
+    final String text;
+
+    Line(Level level, String text) {
+      this.level = level;
+      this.text = text;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<Line> queue = new ConcurrentLinkedQueue<>();
+  private final boolean terminal = System.console() != null;
+  private volatile Level consoleLevel = Level.INFO;
+  private volatile Level fileLevel = Level.DETAIL;
+  private volatile String prefix = ""; // Of every line, tells apart the runs that share a console
+  private volatile boolean progress = true;
+  private volatile Thread writer;
+  private volatile boolean running = true;
+  private BufferedWriter file;
+  private Path filePath;
+
+  // Progress, only touched by whoever holds the lock of drain
+  private volatile LongSupplier done;
+  private volatile long total;
+  private volatile LongSupplier workDone;
+  private volatile long totalWork;
+  private long progressStart;
+  private long lastProgress;
+  private int progressWidth = 0; // Chars of the progress line on the terminal, 0 if none is shown
+
+  /* Default: INFO. -v adds the member lines, -x the commands and stack traces. */
+  public void setLevel(boolean verbose, boolean debug) {
+    consoleLevel = debug ? Level.DEBUG : verbose ? Level.DETAIL : Level.INFO;
+    fileLevel = debug ? Level.DEBUG : Level.DETAIL;
+  }
+
+  public void setPrefix(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /* Without it, startProgress only keeps the counts: for runs that share a console with others. */
+  public void setProgress(boolean progress) {
+    this.progress = progress;
+  }
+
+  /* Appends to the file. The same file is kept for every run of this log. */
+  public synchronized void openFile(Path path) throws IOException {
+    if (path.equals(filePath)) return;
+    closeFile();
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) Files.createDirectories(parent);
+    file = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    filePath = path;
+  }
+
+  /* True if a line of the level goes anywhere. Saves building lines nobody reads. */
+  public boolean isEnabled(Level level) {
+    return level.compareTo(consoleLevel) <= 0 || (file != null && level.compareTo(fileLevel) <= 0);
+  }
+
+  public void error(String text) {
+    log(Level.ERROR, text);
+  }
+
+  /* The error line is shown by default, its stack trace only at DEBUG. */
+  public void error(String text, Throwable error) {
+    log(Level.ERROR, text);
+    if (error != null && isEnabled(Level.DEBUG)) {
+      StringWriter trace = new StringWriter();
+      error.printStackTrace(new PrintWriter(trace));
+      log(Level.DEBUG, trace.toString().trim());
+    }
+  }
+
+  public void info(String text) {
+    log(Level.INFO, text);
+  }
+
+  public void detail(String text) {
+    log(Level.DETAIL, text);
+  }
+
+  public void debug(String text) {
+    log(Level.DEBUG, text);
+  }
+
+  public void log(Level level, String text) {
+    if (!isEnabled(level)) return;
+    queue.add(new Line(level, prefix.isEmpty() ? text : prefix + text));
+    startWriter();
+  }
+
+  /* Shows done/total until stopProgress. done is read by the writer, it must be safe to call from any thread. */
+  public synchronized void startProgress(long total, LongSupplier done) {
+    startProgress(total, done, total, done);
+  }
+
+  /* Same, with the percentage and ETA taken from the work done out of totalWork. */
+  public synchronized void startProgress(long total, LongSupplier done, long totalWork, LongSupplier workDone) {
+    if (!progress) return;
+    this.total = total;
+    this.done = done;
+    this.totalWork = totalWork;
+    this.workDone = workDone;
+    progressStart = System.nanoTime();
+    lastProgress = terminal ? 0 : System.nanoTime(); // Piped, the first line waits a full period
+    startWriter();
+  }
+
+  /* Prints what is queued and leaves the final progress line on its own line. */
+  public synchronized void stopProgress() {
+    drain();
+    if (done != null && terminal) {
+      drawProgress();
+      System.err.println();
+      progressWidth = 0;
+    }
+    done = null;
+    workDone = null;
+  }
+
+  /* Prints every line queued so far. */
+  public synchronized void flush() {
+    drain();
+    System.out.flush();
+  }
+
+  private void startWriter() {
+    if (writer != null) return;
+    synchronized (this) {
+      if (writer != null || !running) return;
+      Thread thread = new Thread(this::write, "migrator-log");
+      thread.setDaemon(true);
+      thread.start();
+      writer = thread;
+    }
+  }
+
+  private void write() {
+    while (running) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS));
+      synchronized (this) {
+        drain();
+        long now = System.nanoTime();
+        long period = TimeUnit.MILLISECONDS.toNanos(terminal ? PROGRESS_MILLIS : PIPED_PROGRESS_MILLIS);
+        if (done != null && now - lastProgress >= period) {
+          lastProgress = now;
+          if (terminal) {
+            drawProgress();
+          } else {
+            System.err.println(progressText());
+          }
+        }
+      }
+    }
+  }
+
+  private synchronized void drain() {
+    if (queue.isEmpty()) return;
+
+    StringBuilder console = new StringBuilder();
+    StringBuilder toFile = file == null ? null : new StringBuilder();
+    SimpleDateFormat format = toFile == null ? null : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    Line line;
+    while ((line = queue.poll()) != null) {
+      if (line.level.compareTo(consoleLevel) <= 0) console.append(line.text).append(System.lineSeparator());
+      if (toFile != null && line.level.compareTo(fileLevel) <= 0) {
+        toFile.append(format.format(new Date(line.time))).append(' ').append(String.format("%-6s", line.level))
+            .append(' ').append(line.text).append(System.lineSeparator());
+      }
+    }
+
+    if (console.length() > 0) {
+      clearProgress();
+      System.out.print(console);
+      System.out.flush();
+    }
+    if (toFile != null && toFile.length() > 0) {
+      try {
+        file.write(toFile.toString());
+        file.flush();
+      } catch (IOException e) {
+        System.err.println("Could not write the log file " + filePath + ": " + e.getMessage());
+        closeFile();
+      }
+    }
+  }
+
+  String progressText() {
+    LongSupplier supplier = done;
+    LongSupplier workSupplier = workDone;
+    long finished = supplier == null ? 0 : supplier.getAsLong();
+    long work = workSupplier == null ? 0 : workSupplier.getAsLong();
+    double seconds = (System.nanoTime() - progressStart) / 1e9;
+    double rate = seconds <= 0 ? 0 : finished / seconds;
+    double workRate = seconds <= 0 ? 0 : work / seconds;
+    String eta = workRate <= 0 || work >= totalWork ? "--:--" : formatDuration((long) ((totalWork - work) / workRate));
+    return String.format("%d/%d members (%d%%) | %.1f/s | ETA %s", finished, total,
+        totalWork == 0 ? 100 : work * 100 / totalWork, rate, eta);
+  }
+
+  static String formatDuration(long seconds) {
+    if (seconds >= 3600) return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    return String.format("%02d:%02d", seconds / 60, seconds % 60);
+  }
+
+  private void drawProgress() {
+    String text = progressText();
+    StringBuilder line = new StringBuilder("\r").append(text);
+    for (int i = text.length(); i < progressWidth; i++) line.append(' '); // Rest of a longer previous line
+    progressWidth = text.length();
+    System.err.print(line);
+    System.err.flush();
+  }
+
+  private void clearProgress() {
+    if (progressWidth == 0) return;
+    StringBuilder blank = new StringBuilder("\r");
+    for (int i = 0; i < progressWidth; i++) blank.append(' ');
+    System.err.print(blank.append('\r'));
+    System.err.flush();
+    progressWidth = 0;
+  }
+
+  private void closeFile() {
+    if (file == null) return;
+    try {
+      file.close();
+    } catch (IOException e) {
+      // Nothing left to write to
+    }
+    file = null;
+    filePath = null;
+  }
+
+  /* Stops the writer after printing what is queued. */
+  @Override
+  public void close() {
+    running = false;
+    Thread thread = writer;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      stopProgress();
+      flush();
+      closeFile();
+    }
+  }
+}
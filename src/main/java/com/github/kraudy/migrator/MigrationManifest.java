@@ -0,0 +1,94 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Record of the members written to a library output dir and the change timestamp they had
+ * when they were copied. Lines are: sourcePf/member.type <TAB> timestamp
+ */
+public class MigrationManifest {
+  public static final String FILE_NAME = ".migrator-manifest";
+  private static final String HEADER = "# SourceMigrator manifest: sourcePf/member.type\tlast source update";
+
+  private final Path path;
+  private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+  private MigrationManifest(Path path) {
+    this.path = path;
+  }
+
+  /* Loads the manifest of a library output dir. Missing file means first run: empty manifest. */
+  public static MigrationManifest load(String libraryDir) throws IOException {
+    MigrationManifest manifest = new MigrationManifest(Paths.get(libraryDir, FILE_NAME));
+    if (!Files.exists(manifest.path)) return manifest;
+
+    try (BufferedReader reader = Files.newBufferedReader(manifest.path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) continue;
+        int tab = line.indexOf('\t');
+        if (tab < 0) continue;
+        manifest.entries.put(line.substring(0, tab), line.substring(tab + 1));
+      }
+    }
+    return manifest;
+  }
+
+  public static String key(String sourcePf, String member, String sourceType) {
+    return sourcePf + "/" + member + "." + sourceType;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /* True if the member was copied before and has not changed since. */
+  public boolean isCurrent(String key, String lastUpdate) {
+    return lastUpdate != null && lastUpdate.equals(entries.get(key));
+  }
+
+  public void put(String key, String lastUpdate) {
+    entries.put(key, lastUpdate == null ? "" : lastUpdate);
+  }
+
+  public void remove(String key) {
+    entries.remove(key);
+  }
+
+  /* Entries not found in the catalog anymore. An empty sourcePf means the whole library was scanned. */
+  public List<String> getRemoved(Set<String> seen, String sourcePf) {
+    List<String> removed = new ArrayList<>();
+    for (String key : entries.keySet()) {
+      if (!sourcePf.isEmpty() && !key.startsWith(sourcePf + "/")) continue;
+      if (!seen.contains(key)) removed.add(key);
+    }
+    return removed;
+  }
+
+  /* Writes to a temp file first so an interrupted run never leaves a truncated manifest. */
+  public void save() throws IOException {
+    Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      writer.write(HEADER);
+      writer.newLine();
+      for (Map.Entry<String, String> entry : new TreeMap<>(entries).entrySet()) {
+        writer.write(entry.getKey() + "\t" + entry.getValue());
+        writer.newLine();
+      }
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,274 @@
+package com.github.kraudy.migrator;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters of a migration run. Safe to update from every migration thread at once.
+ */
+public class MigrationMetrics {
+  private final LongAdder membersMigrated = new LongAdder();
+  private final LongAdder migrationErrors = new LongAdder();
+  private final LongAdder unchangedMembers = new LongAdder();
+  private final LongAdder removedMembers = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder resumedMembers = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final Map<String, SourcePfTotals> sourcePfs = new ConcurrentHashMap<>();
+  private final Map<String, String> context = new LinkedHashMap<>();
+  private final Map<String, MigrationMetrics> parts = new LinkedHashMap<>(); // Runs added to this one, by name
+  private volatile long startNanos = System.nanoTime();
+  private volatile long endNanos = 0;
+
+  public static class SourcePfTotals {
+    final LongAdder members = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+
+    public long getMembers() {
+      return members.sum();
+    }
+
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    public long getBytes() {
+      return bytes.sum();
+    }
+  }
+
+  public void start() {
+    startNanos = System.nanoTime();
+    endNanos = 0;
+  }
+
+  public void stop() {
+    endNanos = System.nanoTime();
+  }
+
+  /* Run info shown at the top of the JSON report: system, user, engine... */
+  public synchronized void putContext(String key, String value) {
+    context.put(key, value);
+  }
+
+  public void recordMigrated(String library, String sourcePf, long latencyNanos, long bytes) {
+    membersMigrated.increment();
+    bytesWritten.add(bytes);
+    latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+
+    SourcePfTotals totals = getTotals(library, sourcePf);
+    totals.members.increment();
+    totals.bytes.add(bytes);
+  }
+
+  public void recordError(String library, String sourcePf, long latencyNanos) {
+    migrationErrors.increment();
+    latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    getTotals(library, sourcePf).errors.increment();
+  }
+
+  public void recordUnchanged() {
+    unchangedMembers.increment();
+  }
+
+  public void recordRemoved() {
+    removedMembers.increment();
+  }
+
+  public void recordResumed() {
+    resumedMembers.increment();
+  }
+
+  public void recordRetry() {
+    retries.increment();
+  }
+
+  /* 
+   * Adds the numbers of another run, like the one of a system of a fan-out. Its source PFs are kept
+   * under name/library/sourcePf. The duration stays the one of this run.
+   */
+  public void add(String name, MigrationMetrics other) {
+    membersMigrated.add(other.getMembersMigrated());
+    migrationErrors.add(other.getMigrationErrors());
+    unchangedMembers.add(other.getUnchangedMembers());
+    removedMembers.add(other.getRemovedMembers());
+    retries.add(other.getRetries());
+    resumedMembers.add(other.getResumedMembers());
+    bytesWritten.add(other.getBytesWritten());
+    latency.add(other.latency);
+    for (Map.Entry<String, SourcePfTotals> entry : other.sourcePfs.entrySet()) {
+      SourcePfTotals totals = sourcePfs.computeIfAbsent(name + "/" + entry.getKey(), key -> new SourcePfTotals());
+      totals.members.add(entry.getValue().getMembers());
+      totals.errors.add(entry.getValue().getErrors());
+      totals.bytes.add(entry.getValue().getBytes());
+    }
+    synchronized (this) {
+      parts.put(name, other);
+    }
+  }
+
+  /* Runs added with add, by name. */
+  public synchronized Map<String, MigrationMetrics> getParts() {
+    return new LinkedHashMap<>(parts);
+  }
+
+  private SourcePfTotals getTotals(String library, String sourcePf) {
+    return sourcePfs.computeIfAbsent(library + "/" + sourcePf, key -> new SourcePfTotals());
+  }
+
+  public long getMembersMigrated() {
+    return membersMigrated.sum();
+  }
+
+  public long getMigrationErrors() {
+    return migrationErrors.sum();
+  }
+
+  public long getUnchangedMembers() {
+    return unchangedMembers.sum();
+  }
+
+  public long getRemovedMembers() {
+    return removedMembers.sum();
+  }
+
+  public long getResumedMembers() {
+    return resumedMembers.sum();
+  }
+
+  /* Members with an outcome, whatever it was. What the progress line counts. */
+  public long getMembersDone() {
+    return getMembersMigrated() + getMigrationErrors() + getUnchangedMembers() + getResumedMembers();
+  }
+
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  /* Source PFs with at least one member migrated. */
+  public long getSourcePfsMigrated() {
+    return sourcePfs.values().stream().filter(totals -> totals.getMembers() > 0).count();
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public double getElapsedSeconds() {
+    long end = endNanos == 0 ? System.nanoTime() : endNanos;
+    return (end - startNanos) / 1_000_000_000.0;
+  }
+
+  public double getMembersPerSecond() {
+    double seconds = getElapsedSeconds();
+    return seconds <= 0 ? 0 : getMembersMigrated() / seconds;
+  }
+
+  public double getBytesPerSecond() {
+    double seconds = getElapsedSeconds();
+    return seconds <= 0 ? 0 : getBytesWritten() / seconds;
+  }
+
+  public synchronized String toJson() {
+    StringBuilder json = new StringBuilder(512);
+    json.append("{");
+    for (Map.Entry<String, String> entry : context.entrySet()) {
+      json.append(quote(entry.getKey())).append(":").append(quote(entry.getValue())).append(",");
+    }
+    json.append("\"durationSeconds\":").append(format(getElapsedSeconds())).append(",");
+    json.append("\"membersMigrated\":").append(getMembersMigrated()).append(",");
+    json.append("\"migrationErrors\":").append(getMigrationErrors()).append(",");
+    json.append("\"unchangedMembers\":").append(getUnchangedMembers()).append(",");
+    json.append("\"removedMembers\":").append(getRemovedMembers()).append(",");
+    json.append("\"resumedMembers\":").append(getResumedMembers()).append(",");
+    json.append("\"retries\":").append(getRetries()).append(",");
+    json.append("\"sourcePfsMigrated\":").append(getSourcePfsMigrated()).append(",");
+    json.append("\"bytesWritten\":").append(getBytesWritten()).append(",");
+    json.append("\"membersPerSecond\":").append(format(getMembersPerSecond())).append(",");
+    json.append("\"bytesPerSecond\":").append(format(getBytesPerSecond())).append(",");
+
+    json.append("\"latencyMillis\":{");
+    json.append("\"count\":").append(latency.getCount()).append(",");
+    json.append("\"min\":").append(millis(latency.getMin())).append(",");
+    json.append("\"mean\":").append(format(latency.getMean() / 1000.0)).append(",");
+    json.append("\"p50\":").append(millis(latency.getPercentile(50))).append(",");
+    json.append("\"p95\":").append(millis(latency.getPercentile(95))).append(",");
+    json.append("\"p99\":").append(millis(latency.getPercentile(99))).append(",");
+    json.append("\"max\":").append(millis(latency.getMax()));
+    json.append("},");
+
+    if (!parts.isEmpty()) {
+      json.append("\"systems\":[");
+      boolean firstPart = true;
+      for (Map.Entry<String, MigrationMetrics> entry : parts.entrySet()) {
+        if (!firstPart) json.append(",");
+        firstPart = false;
+        MigrationMetrics part = entry.getValue();
+        json.append("{\"profile\":").append(quote(entry.getKey()));
+        synchronized (part) {
+          for (Map.Entry<String, String> info : part.context.entrySet()) {
+            json.append(",").append(quote(info.getKey())).append(":").append(quote(info.getValue()));
+          }
+        }
+        json.append(",\"durationSeconds\":").append(format(part.getElapsedSeconds()))
+            .append(",\"membersMigrated\":").append(part.getMembersMigrated())
+            .append(",\"migrationErrors\":").append(part.getMigrationErrors())
+            .append(",\"bytesWritten\":").append(part.getBytesWritten())
+            .append("}");
+      }
+      json.append("],");
+    }
+
+    json.append("\"sourcePfs\":[");
+    boolean first = true;
+    for (Map.Entry<String, SourcePfTotals> entry : new TreeMap<>(sourcePfs).entrySet()) {
+      if (!first) json.append(",");
+      first = false;
+      SourcePfTotals totals = entry.getValue();
+      json.append("{\"sourcePf\":").append(quote(entry.getKey()))
+          .append(",\"members\":").append(totals.getMembers())
+          .append(",\"errors\":").append(totals.getErrors())
+          .append(",\"bytes\":").append(totals.getBytes())
+          .append("}");
+    }
+    json.append("]}");
+    return json.toString();
+  }
+
+  private static String millis(long micros) {
+    return format(micros / 1000.0);
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  static String quote(String value) {
+    if (value == null) return "null";
+    StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '"': quoted.append("\\\""); break;
+        case '\\': quoted.append("\\\\"); break;
+        case '\n': quoted.append("\\n"); break;
+        case '\r': quoted.append("\\r"); break;
+        case '\t': quoted.append("\\t"); break;
+        default:
+          if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+          else quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
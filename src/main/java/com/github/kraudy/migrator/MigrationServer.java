@@ -0,0 +1,339 @@
+package com.github.kraudy.migrator;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400SecurityException;
+
+import io.github.theprez.dotenv_ibmi.IBMiDotEnv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/*
+ * Keeps migration sessions signed on and serves requests of local tools over a loopback port, so a
+ * migration before a compile pays for no JVM start, sign-on, user lookup nor catalog query.
+ * Each session is a SourceMigrator with its own AS400, JDBC connection and engine. A request borrows
+ * one, the catalog is shared by all of them through a ResidentCatalog.
+ *
+ * Protocol: one request per line, fields split by tabs, UTF-8. The first line of a connection must be
+ *   AUTH <token>                            the token of the server file, only readable by its owner
+ * then any number of
+ *   MIGRATE <lib/pf> <mbr,mbr|*ALL> <outDir>  answers OK <path> <path>...
+ *   REVERSE <lib/pf> <mbr> <streamFile>       answers OK
+ *   PING                                      answers OK
+ * A failed request answers ERR <message>. See MigrationClient
+ */
+@Command(name = "migrator-server", description = "Keeps migration sessions open and serves migrate and reverse migrate " +
+    "requests on a local port", mixinStandardHelpOptions = true)
+public class MigrationServer implements Runnable, AutoCloseable {
+  public static final String SERVER_FILE = ".migrator-server";
+  public static final String ALL_MEMBERS = "*ALL";
+  private static final long BORROW_SECONDS = 60; // A request waits this long for a free session
+
+  /* Opens a new signed-on session. Called at start and to replace a session whose connection broke. */
+  public interface SessionFactory {
+    SourceMigrator open() throws Exception;
+  }
+
+  @Option(names = "--port", description = "Loopback port to listen on. 0 takes a free one, written to the server file (default: ${DEFAULT-VALUE})")
+  private int port = 0;
+
+  @Option(names = "--sessions", description = "Sessions kept signed on, requests served at the same time (default: ${DEFAULT-VALUE})")
+  private int sessions = 4;
+
+  @Option(names = { "-t", "--threads" }, description = "Members each session migrates at the same time (default: ${DEFAULT-VALUE})")
+  private int threads = 2;
+
+  @Option(names = "--server-file", description = "Where the port and token are written for the clients (default: ~/" + SERVER_FILE + ")")
+  private String serverFile = "";
+
+  private SessionFactory factory;
+  private final ResidentCatalog catalog = new ResidentCatalog();
+  private final BlockingQueue<SourceMigrator> idle = new LinkedBlockingQueue<>();
+  private final List<SourceMigrator> opened = Collections.synchronizedList(new ArrayList<SourceMigrator>());
+  private final CountDownLatch closed = new CountDownLatch(1);
+  private final String token;
+  private ServerSocket socket;
+  private ExecutorService connections;
+  private Path writtenFile;
+
+  /* Sessions of the system of the .env file, see run() */
+  public MigrationServer() {
+    this(null);
+  }
+
+  public MigrationServer(SessionFactory factory) {
+    this.factory = factory;
+    byte[] random = new byte[24];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : random) hex.append(String.format("%02x", b));
+    this.token = hex.toString();
+  }
+
+  @Override
+  public void run() {
+    try {
+      if (factory == null) {
+        AS400 system = IBMiDotEnv.getNewSystemConnection(true); // Signed on once, every session is a copy
+        factory = () -> {
+          SourceMigrator session = new SourceMigrator(new AS400(system));
+          session.setThreads(threads);
+          return session;
+        };
+      }
+      start(port, sessions);
+      Path file = serverFile.isEmpty() ? getDefaultServerFile() : Paths.get(serverFile);
+      writeServerFile(file);
+      System.out.println("Serving " + sessions + " sessions on 127.0.0.1:" + getPort() + ". Clients find it in " + file);
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "migrator-server-stop"));
+      closed.await();
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      close();
+    }
+  }
+
+  /* Opens the sessions, then listens. Every session signs on before the first request comes. */
+  public void start(int port, int sessions) throws Exception {
+    if (sessions < 1) throw new IllegalArgumentException("Sessions must be greater than zero");
+    for (int i = 0; i < sessions; i++) {
+      idle.add(openSession());
+    }
+
+    socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()); // Never reachable from other hosts
+    connections = Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(task, "migrator-server-connection");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Thread acceptor = new Thread(this::accept, "migrator-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private SourceMigrator openSession() throws Exception {
+    SourceMigrator session = factory.open();
+    session.setResidentCatalog(catalog);
+    opened.add(session);
+    return session;
+  }
+
+  private void accept() {
+    while (!socket.isClosed()) {
+      try {
+        Socket client = socket.accept();
+        connections.execute(() -> serve(client));
+      } catch (SocketException e) {
+        return; // Closed
+      } catch (IOException e) {
+        System.err.println("Could not accept a connection: " + e.getMessage());
+      }
+    }
+  }
+
+  private void serve(Socket client) {
+    try (Socket open = client;
+         BufferedReader in = new BufferedReader(new InputStreamReader(open.getInputStream(), StandardCharsets.UTF_8));
+         Writer out = new OutputStreamWriter(open.getOutputStream(), StandardCharsets.UTF_8)) {
+      open.setTcpNoDelay(true); // Replies are one small line
+      String line = in.readLine();
+      if (line == null || !MessageDigest.isEqual(line.getBytes(StandardCharsets.UTF_8), 
+          ("AUTH\t" + token).getBytes(StandardCharsets.UTF_8))) { // Takes the same time whatever part is wrong
+        reply(out, "ERR\tNot authorized");
+        return;
+      }
+      reply(out, "OK");
+
+      while ((line = in.readLine()) != null) {
+        reply(out, handle(line));
+      }
+    } catch (IOException e) {
+      // The client went away
+    }
+  }
+
+  private static void reply(Writer out, String line) throws IOException {
+    out.write(line);
+    out.write('\n');
+    out.flush();
+  }
+
+  /* Answers one request line. */
+  String handle(String line) {
+    String[] fields = line.split("\t", -1);
+    try {
+      switch (fields[0]) {
+        case "PING":
+          return "OK";
+        case "MIGRATE":
+          checkFields(fields, 4);
+          return migrate(fields[1], getMembers(fields[2]), fields[3]);
+        case "REVERSE":
+          checkFields(fields, 4);
+          return reverseMigrate(fields[1], fields[2], fields[3]);
+        default:
+          return "ERR\tUnknown request " + fields[0];
+      }
+    } catch (RuntimeException e) {
+      return "ERR\t" + (e.getMessage() == null ? e.toString() : e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "ERR\tServer stopping";
+    }
+  }
+
+  private static void checkFields(String[] fields, int count) {
+    if (fields.length != count) throw new IllegalArgumentException(fields[0] + " takes " + (count - 1) + " fields, got " + (fields.length - 1));
+  }
+
+  private static List<String> getMembers(String members) {
+    if (members.isEmpty() || ALL_MEMBERS.equalsIgnoreCase(members)) return new ArrayList<>();
+    return new ArrayList<>(Arrays.asList(members.split(",")));
+  }
+
+  private String migrate(String srcfile, List<String> members, String outDir) throws InterruptedException {
+    SourceMigrator session = borrow();
+    try {
+      session.setMigrationParams(srcfile, members, outDir);
+      session.api();
+      String error = getError(session);
+      if (error != null) return "ERR\t" + error;
+
+      StringBuilder reply = new StringBuilder("OK");
+      for (String path : session.getPathList()) reply.append('\t').append(path);
+      return reply.toString();
+    } finally {
+      giveBack(session);
+    }
+  }
+
+  private String reverseMigrate(String srcfile, String member, String streamFile) throws InterruptedException {
+    SourceMigrator session = borrow();
+    try {
+      session.setReverseMigrationParams(srcfile, member, streamFile);
+      session.api();
+      String error = getError(session);
+      return error == null ? "OK" : "ERR\t" + error;
+    } finally {
+      giveBack(session);
+    }
+  }
+
+  private static String getError(SourceMigrator session) {
+    Exception error = session.getLastError();
+    if (error != null) return error.getMessage() == null ? error.toString() : error.getMessage().replace('\n', ' ');
+    long failed = session.getMetrics().getMigrationErrors();
+    if (failed > 0) return failed + " members could not be migrated";
+    return null;
+  }
+
+  private SourceMigrator borrow() throws InterruptedException {
+    SourceMigrator session = idle.poll(BORROW_SECONDS, TimeUnit.SECONDS);
+    if (session == null) throw new IllegalArgumentException("Every session is busy, try again later");
+    return session;
+  }
+
+  /* A session whose connection broke is replaced, the next request gets a working one. */
+  private void giveBack(SourceMigrator session) {
+    if (!isConnectionFailure(session.getLastError())) {
+      idle.add(session);
+      return;
+    }
+    opened.remove(session);
+    session.close();
+    try {
+      idle.add(openSession());
+    } catch (Exception e) {
+      System.err.println("Could not open a new session, one less is served: " + e.getMessage());
+    }
+  }
+
+  /*
+   * JDBC, host server I/O (ConnectionDroppedException among them) and sign-on failures, also when wrapped.
+   * A local I/O error replaces a working session too: a sign-on is cheaper than a session that fails every request.
+   */
+  static boolean isConnectionFailure(Throwable error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException || cause instanceof IOException || cause instanceof AS400SecurityException) return true;
+      if (cause.getCause() == cause) break;
+    }
+    return false;
+  }
+
+  public int getPort() {
+    return socket.getLocalPort();
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public static Path getDefaultServerFile() {
+    return Paths.get(System.getProperty("user.home"), SERVER_FILE);
+  }
+
+  /* Port and token, readable only by the user that runs the server: whoever reads it migrates with its authority. */
+  public void writeServerFile(Path file) throws IOException {
+    Files.deleteIfExists(file);
+    Files.createFile(file);
+    try {
+      Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException e) {
+      // No POSIX permissions on this file system, the home dir has to keep it private
+    }
+    Files.write(file, (getPort() + "\t" + token + "\n").getBytes(StandardCharsets.UTF_8));
+    writtenFile = file;
+  }
+
+  @Override
+  public void close() {
+    if (closed.getCount() == 0) return;
+    closed.countDown();
+    try {
+      if (socket != null) socket.close();
+      if (writtenFile != null) Files.deleteIfExists(writtenFile);
+    } catch (IOException e) {
+      // Nothing to serve anymore
+    }
+    if (connections != null) connections.shutdownNow();
+    synchronized (opened) {
+      for (SourceMigrator session : opened) session.close();
+      opened.clear();
+    }
+    idle.clear();
+  }
+
+  public static void main(String... args) {
+    new CommandLine(new MigrationServer()).execute(args);
+  }
+}
@@ -0,0 +1,246 @@
+package com.github.kraudy.migrator;
+
+import com.ibm.as400.access.AS400;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import io.github.cdimascio.dotenv.DotenvEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Unmatched;
+
+/*
+ * Migrates from several systems, like the partitions of a shop, at the same time. Each system runs
+ * on its own thread as a whole SourceMigrator: its own sign-on, host server jobs, engine and
+ * concurrency limit, so a slow partition never holds back the others. Its output goes to
+ * outDir/<profile>/<library>/... and the report adds up every system.
+ *
+ * A profile is a .env file with the IBMI_HOSTNAME, IBMI_USERNAME and IBMI_PASSWORD of one system, and
+ * optionally MIGRATOR_THREADS. Its name is the file name without .env. Every other option is the one
+ * of a single system migration and applies to all of them.
+ */
+@Command(name = "migrator --systems", description = "Migrates the same source PFs from several IBM i systems at the same time",
+    mixinStandardHelpOptions = true)
+public class MultiSystemMigrator implements Runnable {
+  public static final String SYSTEMS_OPTION = "--systems";
+  public static final String PROFILE_SUFFIX = ".env";
+  public static final String THREADS_KEY = "MIGRATOR_THREADS";
+
+  /* Opens the signed-on migrator of a profile. */
+  public interface SystemFactory {
+    SourceMigrator open(String profile) throws Exception;
+  }
+
+  @Option(names = SYSTEMS_OPTION, split = ",", required = true, description = "Profiles of the systems to migrate from: .env files " +
+      "with the IBMI_HOSTNAME, IBMI_USERNAME and IBMI_PASSWORD of each. MIGRATOR_THREADS, if any, is the -t of that system")
+  private List<String> profiles = new ArrayList<>();
+
+  @Option(names = "-o", description = "Sources destination, each system gets a dir named after its profile",
+      converter = SourceMigrator.OutDirConverter.class)
+  private String outDir = "sources";
+
+  @Option(names = "--json", description = "Print the migration report as JSON")
+  private boolean jsonOutput = false;
+
+  @Option(names = "--report-file", description = "Also write the JSON migration report to this file")
+  private String reportFile = "";
+
+  @Unmatched
+  private List<String> migratorArgs = new ArrayList<>(); // Options of SourceMigrator, given to every system
+
+  private final SystemFactory factory;
+  private MigrationMetrics metrics = new MigrationMetrics();
+  private final Map<String, String> failures = new LinkedHashMap<>(); // Error of each system that could not finish
+
+  /* Systems of the .env profiles, see open() */
+  public MultiSystemMigrator() {
+    this(MultiSystemMigrator::open);
+  }
+
+  public MultiSystemMigrator(SystemFactory factory) {
+    this.factory = factory;
+  }
+
+  /* True if the args ask for a fan-out rather than a single system migration. */
+  public static boolean isFanOut(String... args) {
+    for (String arg : args) {
+      if (arg.equals(SYSTEMS_OPTION) || arg.startsWith(SYSTEMS_OPTION + "=")) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void run() {
+    try {
+      migrate();
+      report();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /* Runs every system at the same time and waits for all of them. A failed system does not stop the others. */
+  public MigrationMetrics migrate() throws Exception {
+    if (migratorArgs.contains("--watch") || migratorArgs.stream().anyMatch(arg -> arg.startsWith("--watch="))) {
+      throw new IllegalArgumentException("--watch only applies to a single system.");
+    }
+
+    Map<String, String> named = new LinkedHashMap<>();
+    for (String profile : profiles) {
+      String name = getName(profile);
+      if (named.put(name, profile) != null) {
+        throw new IllegalArgumentException("Two profiles are named " + name + ", their output would share a dir.");
+      }
+    }
+
+    metrics = new MigrationMetrics();
+    failures.clear();
+    metrics.putContext("systems", String.join(",", named.keySet()));
+    metrics.start();
+
+    ExecutorService pool = Executors.newFixedThreadPool(named.size(), task -> {
+      Thread thread = new Thread(task, "migrator-system");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      Map<String, Future<MigrationMetrics>> runs = new LinkedHashMap<>();
+      for (Map.Entry<String, String> entry : named.entrySet()) {
+        runs.put(entry.getKey(), pool.submit(() -> migrateSystem(entry.getKey(), entry.getValue())));
+      }
+
+      for (Map.Entry<String, Future<MigrationMetrics>> run : runs.entrySet()) {
+        try {
+          metrics.add(run.getKey(), run.getValue().get()); // In the order of the profiles
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          failures.put(run.getKey(), cause.getMessage() == null ? cause.toString() : cause.getMessage());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    metrics.stop();
+    if (!failures.isEmpty()) metrics.putContext("failedSystems", String.join(",", failures.keySet()));
+    return metrics;
+  }
+
+  private MigrationMetrics migrateSystem(String name, String profile) throws Exception {
+    try (SourceMigrator migrator = factory.open(profile)) {
+      migrator.setFanOut(name);
+      List<String> args = new ArrayList<>(migratorArgs);
+      args.add("-o");
+      args.add(Paths.get(outDir, name).toString());
+      if (jsonOutput) args.add("--json");
+      new CommandLine(migrator).parseArgs(args.toArray(new String[0]));
+
+      migrator.api();
+      if (migrator.getLastError() != null) throw migrator.getLastError();
+      return migrator.getMetrics();
+    }
+  }
+
+  /* prod.env is prod. A bare .env is named after its dir. */
+  static String getName(String profile) {
+    Path path = Paths.get(profile).toAbsolutePath().normalize();
+    String file = path.getFileName().toString();
+    if (file.equals(PROFILE_SUFFIX)) {
+      Path dir = path.getParent();
+      return dir == null || dir.getFileName() == null ? "default" : dir.getFileName().toString();
+    }
+    return file.endsWith(PROFILE_SUFFIX) ? file.substring(0, file.length() - PROFILE_SUFFIX.length()) : file;
+  }
+
+  /* Signs on with the keys of the profile. Only the file counts: an IBMI_ variable of the environment would point every profile at one system. */
+  static SourceMigrator open(String profile) throws Exception {
+    Path path = Paths.get(profile).toAbsolutePath().normalize();
+    if (!Files.isRegularFile(path)) throw new IllegalArgumentException("Profile " + profile + " not found.");
+
+    Dotenv dotenv = Dotenv.configure()
+        .directory(path.getParent().toString())
+        .filename(path.getFileName().toString())
+        .load();
+    Map<String, String> keys = new HashMap<>();
+    for (DotenvEntry entry : dotenv.entries(Dotenv.Filter.DECLARED_IN_ENV_FILE)) {
+      keys.put(entry.getKey(), entry.getValue());
+    }
+
+    String host = keys.get("IBMI_HOSTNAME");
+    if (host == null || host.trim().isEmpty()) throw new IllegalArgumentException("Profile " + profile + " has no IBMI_HOSTNAME.");
+    AS400 system = new AS400(host.trim());
+    system.setUserId(keys.getOrDefault("IBMI_USERNAME", "*CURRENT"));
+    String password = keys.get("IBMI_PASSWORD");
+    if (password != null && !password.isEmpty()) system.setPassword(password.toCharArray());
+    system.setGuiAvailable(false);
+
+    SourceMigrator migrator = new SourceMigrator(system);
+    String threads = keys.get(THREADS_KEY);
+    if (threads != null) {
+      try {
+        migrator.setThreads(Integer.parseInt(threads.trim()));
+      } catch (NumberFormatException e) {
+        migrator.close();
+        throw new IllegalArgumentException("Profile " + profile + " has an invalid " + THREADS_KEY + ": " + threads);
+      }
+    }
+    return migrator;
+  }
+
+  public MigrationMetrics getMetrics() {
+    return metrics;
+  }
+
+  public Map<String, String> getFailures() {
+    return failures;
+  }
+
+  private void report() throws Exception {
+    if (!reportFile.isEmpty()) {
+      Files.write(Paths.get(reportFile), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    if (jsonOutput) {
+      System.out.println(metrics.toJson());
+      return;
+    }
+
+    System.out.println("\nMigration completed on " + metrics.getParts().size() + " of " + profiles.size() + " systems.");
+    for (Map.Entry<String, MigrationMetrics> part : metrics.getParts().entrySet()) {
+      MigrationMetrics system = part.getValue();
+      System.out.printf("  %s: %d members | %d errors | %d bytes | %.2f seconds%n", part.getKey(),
+          system.getMembersMigrated(), system.getMigrationErrors(), system.getBytesWritten(), system.getElapsedSeconds());
+    }
+    for (Map.Entry<String, String> failure : failures.entrySet()) {
+      System.out.println("  " + failure.getKey() + ": failed: " + failure.getValue());
+    }
+    System.out.println("Total Source PFs migrated: " + metrics.getSourcePfsMigrated());
+    System.out.println("Total members migrated: " + metrics.getMembersMigrated());
+    System.out.println("Migration errors: " + metrics.getMigrationErrors());
+    if (metrics.getRetries() > 0) {
+      System.out.println("Retries: " + metrics.getRetries());
+    }
+    System.out.println("Bytes written: " + metrics.getBytesWritten());
+    System.out.printf("Members per second: %.1f%n", metrics.getMembersPerSecond());
+    System.out.printf("Total time taken: %.2f seconds%n", metrics.getElapsedSeconds());
+  }
+
+  public static void main(String... args) {
+    new CommandLine(new MultiSystemMigrator()).execute(args);
+  }
+}
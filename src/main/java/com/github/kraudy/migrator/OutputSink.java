@@ -0,0 +1,17 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+
+/*
+ * Where the member migration writes member content read in the JVM.
+ * Entry names keep the layout of the migration: library/sourcePf/member.type
+ * Implementations must be safe to call from many migration threads at once.
+ */
+public interface OutputSink extends AutoCloseable {
+
+  /* Writes the content under the entry name and returns where it went. */
+  String write(String entryName, byte[] content) throws IOException;
+
+  @Override
+  void close() throws IOException;
+}
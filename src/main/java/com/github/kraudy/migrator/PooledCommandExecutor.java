@@ -0,0 +1,49 @@
+package com.github.kraudy.migrator;
+
+import java.beans.PropertyVetoException;
+import java.io.IOException;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400SecurityException;
+import com.ibm.as400.access.CommandCall;
+import com.ibm.as400.access.ErrorCompletingRequestException;
+
+/*
+ * Runs each command through CommandCall on a system borrowed from the pool,
+ * so concurrent commands land on different host server jobs.
+ */
+public class PooledCommandExecutor implements CommandExecutor {
+  private final SystemPool systems;
+
+  public PooledCommandExecutor(SystemPool systems) {
+    this.systems = systems;
+  }
+
+  @Override
+  public CommandResult run(String commandStr) {
+    AS400 system;
+    try {
+      system = systems.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return CommandResult.failed(commandStr, e);
+    }
+
+    try {
+      CommandCall cmd = new CommandCall(system);
+      boolean success = cmd.run(commandStr);
+      return CommandResult.of(commandStr, success, cmd.getMessageList());
+
+    } catch (AS400SecurityException | ErrorCompletingRequestException | IOException | InterruptedException
+        | PropertyVetoException e) {
+      return CommandResult.failed(commandStr, e);
+    } finally {
+      systems.release(system);
+    }
+  }
+
+  @Override
+  public void close() {
+    systems.close();
+  }
+}
@@ -0,0 +1,131 @@
+package com.github.kraudy.migrator;
+
+import java.beans.PropertyVetoException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400Exception;
+import com.ibm.as400.access.AS400File;
+import com.ibm.as400.access.AS400FileRecordDescription;
+import com.ibm.as400.access.AS400SecurityException;
+import com.ibm.as400.access.CharacterFieldDescription;
+import com.ibm.as400.access.FieldDescription;
+import com.ibm.as400.access.QSYSObjectPathName;
+import com.ibm.as400.access.Record;
+import com.ibm.as400.access.RecordFormat;
+import com.ibm.as400.access.SequentialFile;
+
+/*
+ * Reads members through jt400 record level access on systems borrowed from the pool.
+ * SRCDTA of the single byte EBCDIC CCSIDs goes straight from the record bytes to UTF-8 through
+ * the tables of EbcdicConverter, on one line buffer per read. Any other CCSID is converted by jt400
+ * to a String, then trimmed and encoded as UTF-8.
+ */
+public class RecordMemberReader implements MemberReader {
+  private static final int BLOCKING_FACTOR = 500; // Records per host server round trip
+  private static final String SOURCE_DATA = "SRCDTA";
+
+  private final SystemPool systems;
+  private final Map<String, SourceFormat> formats = new ConcurrentHashMap<>(); // One lookup per source PF
+
+  private static class SourceFormat {
+    final RecordFormat recordFormat;
+    final EbcdicConverter converter; // Null when jt400 converts
+
+    SourceFormat(RecordFormat recordFormat, EbcdicConverter converter) {
+      this.recordFormat = recordFormat;
+      this.converter = converter;
+    }
+  }
+
+  public RecordMemberReader(SystemPool systems) {
+    this.systems = systems;
+  }
+
+  @Override
+  public byte[] read(String library, String sourcePf, String member) throws IOException {
+    AS400 system;
+    try {
+      system = systems.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a system to read " + member, e);
+    }
+
+    SequentialFile file = new SequentialFile(system, QSYSObjectPathName.toPath(library, sourcePf, member, "MBR"));
+    try {
+      SourceFormat format = getSourceFormat(system, library, sourcePf);
+      file.setRecordFormat(format.recordFormat);
+      file.open(AS400File.READ_ONLY, BLOCKING_FACTOR, AS400File.COMMIT_LOCK_LEVEL_NONE);
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream(8 * 1024);
+      EbcdicConverter converter = format.converter;
+      byte[] line = new byte[0];
+      Record record;
+      while ((record = file.readNext()) != null) {
+        if (converter == null) {
+          appendLine(content, (String) record.getField(SOURCE_DATA));
+          continue;
+        }
+        byte[] sourceData = record.getFieldAsBytes(SOURCE_DATA);
+        if (line.length < EbcdicConverter.maxUtf8Length(sourceData.length) + 1) {
+          line = new byte[EbcdicConverter.maxUtf8Length(sourceData.length) + 1]; // Once, every record has the same length
+        }
+        content.write(line, 0, converter.toUtf8Line(sourceData, 0, sourceData.length, line, 0));
+      }
+      return content.toByteArray();
+
+    } catch (AS400Exception | AS400SecurityException | InterruptedException | PropertyVetoException e) {
+      if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+      throw new IOException("Could not read member " + library + "/" + sourcePf + "(" + member + ")", e);
+    } finally {
+      try {
+        if (file.isOpen()) file.close();
+      } catch (AS400Exception | AS400SecurityException | InterruptedException e) {
+        // Nothing left to read, the pooled system gets the file closed when it disconnects
+      }
+      systems.release(system);
+    }
+  }
+
+  private SourceFormat getSourceFormat(AS400 system, String library, String sourcePf) 
+      throws AS400Exception, AS400SecurityException, InterruptedException, IOException {
+    String key = library + "/" + sourcePf;
+    SourceFormat format = formats.get(key);
+    if (format != null) return format;
+
+    AS400FileRecordDescription description = new AS400FileRecordDescription(system, 
+        QSYSObjectPathName.toPath(library, sourcePf, "FILE"));
+    RecordFormat recordFormat = description.retrieveRecordFormat()[0];
+    format = new SourceFormat(recordFormat, getConverter(recordFormat.getFieldDescription(SOURCE_DATA)));
+    formats.put(key, format);
+    return format;
+  }
+
+  /* Null for the CCSIDs without a table: 65535, double byte, UTF-8 ones. */
+  static EbcdicConverter getConverter(FieldDescription sourceData) {
+    if (!(sourceData instanceof CharacterFieldDescription)) return null;
+    String ccsid = ((CharacterFieldDescription) sourceData).getCCSID();
+    if (ccsid == null) return null;
+    try {
+      int value = Integer.parseInt(ccsid.trim());
+      return EbcdicConverter.isSupported(value) ? EbcdicConverter.forCcsid(value) : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /* Same framing as CPYTOSTMF ENDLINFMT(*LF): trailing blanks removed, LF appended. */
+  static void appendLine(ByteArrayOutputStream content, String sourceData) {
+    int end = sourceData.length();
+    while (end > 0 && sourceData.charAt(end - 1) == ' ') end--;
+
+    byte[] line = sourceData.substring(0, end).getBytes(StandardCharsets.UTF_8);
+    content.write(line, 0, line.length);
+    content.write('\n');
+  }
+}
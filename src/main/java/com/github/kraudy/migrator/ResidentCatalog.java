@@ -0,0 +1,94 @@
+package com.github.kraudy.migrator;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Catalogs kept in memory across the runs and sessions of a long-lived process, like the migration
+ * server. A catalog is reused while the probe of its libraries is unchanged, so a member added since
+ * is never missed and the full query only runs after a change. Sources without a probe reuse it for ttlMillis.
+ * The system name and CCSID do not change while the process lives, they are asked once.
+ */
+public class ResidentCatalog {
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static class Entry {
+    final String probe;
+    final SourceCatalog catalog;
+
+    Entry(String probe, SourceCatalog catalog) {
+      this.probe = probe;
+      this.catalog = catalog;
+    }
+  }
+
+  private final Map<String, Entry> catalogs = new ConcurrentHashMap<>(); // Per library scope
+  private final long ttlMillis;
+  private volatile String systemName;
+  private volatile String ccsid;
+
+  public ResidentCatalog() {
+    this(DEFAULT_TTL_MILLIS);
+  }
+
+  public ResidentCatalog(long ttlMillis) {
+    this.ttlMillis = ttlMillis;
+  }
+
+  /* The source of one session, answered from memory while nothing changed. */
+  public CatalogSource over(CatalogSource source) {
+    return new CatalogSource() {
+      @Override
+      public SourceCatalog load(List<String> libraryNames) throws SQLException {
+        return ResidentCatalog.this.load(source, libraryNames);
+      }
+
+      @Override
+      public String probe(List<String> libraryNames) throws SQLException {
+        return source.probe(libraryNames);
+      }
+
+      @Override
+      public String getSystemName() throws SQLException {
+        if (systemName == null) systemName = source.getSystemName();
+        return systemName;
+      }
+
+      @Override
+      public String getCcsid() throws SQLException {
+        if (ccsid == null) ccsid = source.getCcsid();
+        return ccsid;
+      }
+    };
+  }
+
+  private SourceCatalog load(CatalogSource source, List<String> libraryNames) throws SQLException {
+    String scope = libraryNames.stream().sorted().collect(Collectors.joining(","));
+    String probe = source.probe(libraryNames);
+    Entry entry = catalogs.get(scope);
+    if (entry != null && isCurrent(entry, probe)) return entry.catalog;
+
+    // Two sessions may both miss and load it, the last one stays. Cheaper than holding the others back
+    SourceCatalog catalog = source.load(libraryNames);
+    catalogs.put(scope, new Entry(probe, catalog));
+    return catalog;
+  }
+
+  private boolean isCurrent(Entry entry, String probe) {
+    if (probe != null) return probe.equals(entry.probe);
+    return System.currentTimeMillis() - entry.catalog.getLoadedAt() < ttlMillis;
+  }
+
+  /* Drops every catalog, the next run of each scope loads it again. */
+  public void clear() {
+    catalogs.clear();
+  }
+
+  public int size() {
+    return catalogs.size();
+  }
+}
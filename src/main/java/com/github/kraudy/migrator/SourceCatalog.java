@@ -0,0 +1,256 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+ * Snapshot of the source members of a set of libraries: library -> source PF -> member.
+ * Loaded with a single SYSPARTITIONSTAT query, then every validation, directory and work list
+ * of the run is answered from memory.
+ */
+public class SourceCatalog {
+  private static final String CACHE_HEADER = "# SourceMigrator catalog";
+
+  private final Map<String, Map<String, Map<String, SourceMember>>> libraries = new TreeMap<>();
+  private final String scope; // Library names the catalog was loaded for, generic ones included
+  private final long loadedAt;
+  private int size = 0;
+
+  public SourceCatalog(List<String> libraryNames) {
+    this(getScope(libraryNames), System.currentTimeMillis());
+  }
+
+  private SourceCatalog(String scope, long loadedAt) {
+    this.scope = scope;
+    this.loadedAt = loadedAt;
+  }
+
+  private static String getScope(List<String> libraryNames) {
+    return libraryNames.stream().sorted().collect(Collectors.joining(","));
+  }
+
+  /* Loads every source member of the libraries. Generic names (APP*) are matched with LIKE. */
+  public static SourceCatalog load(StatementCache statements, List<String> libraryNames, int fetchSize) throws SQLException {
+    SourceCatalog catalog = new SourceCatalog(libraryNames);
+
+    List<String> exact = getExact(libraryNames);
+    List<String> generic = getGeneric(libraryNames);
+    PreparedStatement stmt = statements.prepare(getCatalogQuery(exact.size(), generic.size()));
+    stmt.setFetchSize(fetchSize);
+    setLibraries(stmt, exact, generic);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        catalog.add(new SourceMember(
+            rs.getString("Library").trim(),
+            rs.getString("SourcePf").trim(),
+            rs.getString("Member").trim(),
+            rs.getString("SourceType").trim(),
+            rs.getString("LastUpdate"),
+            rs.getLong("Rows"),
+            rs.getLong("DataSize")));
+      }
+    }
+    return catalog;
+  }
+
+  /* 
+   * Member count and latest timestamps of the libraries, in one row. An edit moves the source update,
+   * an added or removed member the count or the change timestamp. 
+   */
+  public static String probe(StatementCache statements, List<String> libraryNames) throws SQLException {
+    List<String> exact = getExact(libraryNames);
+    List<String> generic = getGeneric(libraryNames);
+    PreparedStatement stmt = statements.prepare(getProbeQuery(exact.size(), generic.size()));
+    setLibraries(stmt, exact, generic);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      if (!rs.next()) return "";
+      return rs.getLong("Members") + "|" + rs.getString("LastUpdate") + "|" + rs.getString("LastChange");
+    }
+  }
+
+  private static List<String> getExact(List<String> libraryNames) {
+    return libraryNames.stream().filter(l -> !l.contains("*")).collect(Collectors.toList());
+  }
+
+  private static List<String> getGeneric(List<String> libraryNames) {
+    return libraryNames.stream().filter(l -> l.contains("*"))
+        .map(l -> l.replace("_", "\\_").replace("*", "%")).collect(Collectors.toList());
+  }
+
+  private static void setLibraries(PreparedStatement stmt, List<String> exact, List<String> generic) throws SQLException {
+    int param = 1;
+    for (String library : exact) stmt.setString(param++, library);
+    for (String pattern : generic) stmt.setString(param++, pattern);
+  }
+
+  /* Params: the exact library names, then one LIKE pattern per generic name. */
+  static String getCatalogQuery(int exactCount, int genericCount) {
+    return "SELECT CAST(SYSTEM_TABLE_SCHEMA AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Library, " +
+                  "CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf, " +
+                  "CAST(SYSTEM_TABLE_MEMBER AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Member, " +
+                  "CAST(SOURCE_TYPE AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourceType, " +
+                  "COALESCE(LAST_SOURCE_UPDATE_TIMESTAMP, LAST_CHANGE_TIMESTAMP) AS LastUpdate, " +
+                  "NUMBER_ROWS AS Rows, " +
+                  "DATA_SIZE AS DataSize " +
+        getCatalogFilter(exactCount, genericCount);
+  }
+
+  /* Same params as the catalog query. */
+  static String getProbeQuery(int exactCount, int genericCount) {
+    return "SELECT COUNT(*) AS Members, " +
+                  "MAX(COALESCE(LAST_SOURCE_UPDATE_TIMESTAMP, LAST_CHANGE_TIMESTAMP)) AS LastUpdate, " +
+                  "MAX(LAST_CHANGE_TIMESTAMP) AS LastChange " +
+        getCatalogFilter(exactCount, genericCount);
+  }
+
+  private static String getCatalogFilter(int exactCount, int genericCount) {
+    List<String> filters = new ArrayList<>();
+    if (exactCount > 0) {
+      filters.add("SYSTEM_TABLE_SCHEMA IN (" + StatementCache.placeholders(exactCount) + ")");
+    }
+    for (int i = 0; i < genericCount; i++) {
+      filters.add("SYSTEM_TABLE_SCHEMA LIKE ? ESCAPE '\\'");
+    }
+
+    return "FROM QSYS2. SYSPARTITIONSTAT " +
+        "WHERE TRIM(SOURCE_TYPE) <> '' " +
+        "AND (" + String.join(" OR ", filters) + ")";
+  }
+
+  public synchronized void add(SourceMember member) {
+    Map<String, Map<String, SourceMember>> sourcePfs = libraries.computeIfAbsent(member.getLibrary(), l -> new TreeMap<>());
+    Map<String, SourceMember> members = sourcePfs.computeIfAbsent(member.getSourcePf(), pf -> new TreeMap<>());
+    if (members.put(member.getMember(), member) == null) size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  /* True if the catalog was loaded for exactly these library names. */
+  public boolean isLoadedFor(List<String> libraryNames) {
+    return scope.equals(getScope(libraryNames));
+  }
+
+  public boolean hasLibrary(String library) {
+    return libraries.containsKey(library);
+  }
+
+  public List<String> getLibraries() {
+    return new ArrayList<>(libraries.keySet());
+  }
+
+  /* Libraries of the catalog that match a generic name like APP* */
+  public List<String> matchLibraries(String genericName) {
+    Pattern pattern = Pattern.compile(Pattern.quote(genericName).replace("*", "\\E.*\\Q"));
+    return libraries.keySet().stream().filter(l -> pattern.matcher(l).matches()).collect(Collectors.toList());
+  }
+
+  public Set<String> getSourcePfs(String library) {
+    Map<String, Map<String, SourceMember>> sourcePfs = libraries.get(library);
+    return sourcePfs == null ? Collections.<String>emptySet() : sourcePfs.keySet();
+  }
+
+  public boolean hasSourcePf(String library, String sourcePf) {
+    return getSourcePfs(library).contains(sourcePf);
+  }
+
+  public int getMemberCount(String library, String sourcePf) {
+    return getMembers(library, sourcePf).size();
+  }
+
+  public Map<String, SourceMember> getMembers(String library, String sourcePf) {
+    Map<String, Map<String, SourceMember>> sourcePfs = libraries.get(library);
+    if (sourcePfs == null) return Collections.emptyMap();
+    Map<String, SourceMember> members = sourcePfs.get(sourcePf);
+    return members == null ? Collections.<String, SourceMember>emptyMap() : members;
+  }
+
+  public SourceMember getMember(String library, String sourcePf, String member) {
+    return getMembers(library, sourcePf).get(member);
+  }
+
+  /* Work list of a run. Empty sourcePf means every source PF, empty members every member. */
+  public List<SourceMember> select(List<String> libraryNames, String sourcePf, List<String> members) {
+    Set<String> wanted = new HashSet<>(members);
+    List<SourceMember> selected = new ArrayList<>();
+    for (String library : libraryNames) {
+      for (String pf : getSourcePfs(library)) {
+        if (!sourcePf.isEmpty() && !sourcePf.equals(pf)) continue;
+        for (SourceMember member : getMembers(library, pf).values()) {
+          if (wanted.isEmpty() || wanted.contains(member.getMember())) selected.add(member);
+        }
+      }
+    }
+    return selected;
+  }
+
+  /* Cache line: library, sourcePf, member, type, rows, size, last update. Tab separated. */
+  public synchronized void save(Path cacheFile) throws IOException {
+    Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      writer.write(CACHE_HEADER + "\t" + loadedAt + "\t" + scope);
+      writer.newLine();
+      for (Map<String, Map<String, SourceMember>> sourcePfs : libraries.values()) {
+        for (Map<String, SourceMember> members : sourcePfs.values()) {
+          for (SourceMember m : members.values()) {
+            writer.write(m.getLibrary() + "\t" + m.getSourcePf() + "\t" + m.getMember() + "\t" + m.getSourceType() + "\t" +
+                m.getRows() + "\t" + m.getDataSize() + "\t" + (m.getLastUpdate() == null ? "" : m.getLastUpdate()));
+            writer.newLine();
+          }
+        }
+      }
+    }
+    Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /* Reads a cached catalog. Null if there is none, it is older than ttlSeconds or was loaded for other libraries. */
+  public static SourceCatalog readCache(Path cacheFile, long ttlSeconds, List<String> libraryNames) throws IOException {
+    if (!Files.exists(cacheFile)) return null;
+
+    try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+      String[] header = String.valueOf(reader.readLine()).split("\t", -1);
+      if (header.length != 3 || !header[0].equals(CACHE_HEADER)) return null;
+
+      long loadedAt = Long.parseLong(header[1]);
+      if (System.currentTimeMillis() - loadedAt > TimeUnit.SECONDS.toMillis(ttlSeconds)) return null;
+      if (!header[2].equals(getScope(libraryNames))) return null;
+
+      SourceCatalog catalog = new SourceCatalog(header[2], loadedAt);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 7) continue;
+        catalog.add(new SourceMember(fields[0], fields[1], fields[2], fields[3],
+            fields[6].isEmpty() ? null : fields[6], Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+      }
+      return catalog;
+    } catch (NumberFormatException e) {
+      return null; // Damaged cache, load it again
+    }
+  }
+}
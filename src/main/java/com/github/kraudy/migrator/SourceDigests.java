@@ -0,0 +1,113 @@
+package com.github.kraudy.migrator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Sidecar file kept next to the stream files of a reverse migration with the SHA-256 of the members
+ * they were compared with. Lines are: LIBRARY/SOURCEPF/MEMBER <TAB> last source update <TAB> digest
+ * A member whose change timestamp still matches is not read again to know its digest.
+ */
+public class SourceDigests {
+  public static final String FILE_NAME = ".migrator-digests";
+  private static final String HEADER = "# SourceMigrator digests: library/sourcePf/member\tlast source update\tsha-256";
+
+  private final Path path;
+  private final Map<String, String[]> entries = new ConcurrentHashMap<>(); // key -> { last update, digest }
+
+  private SourceDigests(Path path) {
+    this.path = path;
+  }
+
+  /* Loads the digests of a stream file dir. Missing file means nothing is known yet. */
+  public static SourceDigests load(Path dir) throws IOException {
+    SourceDigests digests = new SourceDigests(dir.resolve(FILE_NAME));
+    if (!Files.exists(digests.path)) return digests;
+
+    try (BufferedReader reader = Files.newBufferedReader(digests.path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) continue;
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 3) continue;
+        digests.entries.put(fields[0], new String[] { fields[1], fields[2] });
+      }
+    }
+    return digests;
+  }
+
+  public static String key(String library, String sourcePf, String member) {
+    return library + "/" + sourcePf + "/" + member;
+  }
+
+  /* Digest of the member if it was computed when the member had this change timestamp. Null otherwise. */
+  public String get(String key, String lastUpdate) {
+    String[] entry = entries.get(key);
+    if (entry == null || lastUpdate == null || !lastUpdate.equals(entry[0])) return null;
+    return entry[1];
+  }
+
+  public void put(String key, String lastUpdate, String digest) {
+    if (lastUpdate == null) return; // Could never be matched again
+    entries.put(key, new String[] { lastUpdate, digest });
+  }
+
+  public void remove(String key) {
+    entries.remove(key);
+  }
+
+  /* Writes to a temp file first so an interrupted run never leaves a truncated file. */
+  public void save() throws IOException {
+    Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      writer.write(HEADER);
+      writer.newLine();
+      for (Map.Entry<String, String[]> entry : new TreeMap<>(entries).entrySet()) {
+        writer.write(entry.getKey() + "\t" + entry.getValue()[0] + "\t" + entry.getValue()[1]);
+        writer.newLine();
+      }
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public static String sha256(byte[] content) {
+    try {
+      StringBuilder hex = new StringBuilder(64);
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /*
+   * Digest of the stream file as a member would read back after CPYFRMSTMF: one record per line, whatever
+   * the line end, with trailing blanks removed. So it can be compared with the digest of MemberReader content.
+   */
+  public static String ofStreamFile(Path streamFile) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(Files.size(streamFile) + 64, Integer.MAX_VALUE));
+    try (BufferedReader reader = Files.newBufferedReader(streamFile, StandardCharsets.UTF_8)) {
+      String line;
+      boolean first = true;
+      while ((line = reader.readLine()) != null) {
+        if (first && line.startsWith("\uFEFF")) line = line.substring(1); // Byte order mark is not source
+        first = false;
+        RecordMemberReader.appendLine(content, line);
+      }
+    }
+    return sha256(content.toByteArray());
+  }
+}
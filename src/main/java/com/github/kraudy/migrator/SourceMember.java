@@ -0,0 +1,70 @@
+package com.github.kraudy.migrator;
+
+/*
+ * One source member as listed by the catalog.
+ */
+public class SourceMember {
+  private final String library;
+  private final String sourcePf;
+  private final String member;
+  private final String sourceType;
+  private final String lastUpdate;
+  private final long rows;
+  private final long dataSize;
+
+  public SourceMember(String library, String sourcePf, String member, String sourceType, String lastUpdate) {
+    this(library, sourcePf, member, sourceType, lastUpdate, 0, 0);
+  }
+
+  public SourceMember(String library, String sourcePf, String member, String sourceType, String lastUpdate, 
+      long rows, long dataSize) {
+    this.library = library;
+    this.sourcePf = sourcePf;
+    this.member = member;
+    this.sourceType = sourceType;
+    this.lastUpdate = lastUpdate;
+    this.rows = rows;
+    this.dataSize = dataSize;
+  }
+
+  public String getLibrary() {
+    return library;
+  }
+
+  public String getSourcePf() {
+    return sourcePf;
+  }
+
+  public String getMember() {
+    return member;
+  }
+
+  public String getSourceType() {
+    return sourceType;
+  }
+
+  /* Last source update timestamp, null if the catalog has none. */
+  public String getLastUpdate() {
+    return lastUpdate;
+  }
+
+  /* Number of records, 0 if unknown. */
+  public long getRows() {
+    return rows;
+  }
+
+  /* Size in bytes of the member data space, 0 if unknown. */
+  public long getDataSize() {
+    return dataSize;
+  }
+
+  /* Stream file name: member.type */
+  public String getFileName() {
+    return member + "." + sourceType;
+  }
+
+  @Override
+  public String toString() {
+    return library + "/" + sourcePf + "(" + member + ")";
+  }
+}
@@ -3,9 +3,9 @@ package com.github.kraudy.migrator;
 import com.ibm.as400.access.AS400;
 import com.ibm.as400.access.AS400SecurityException;
 import com.ibm.as400.access.AS400JDBCDataSource;
-import com.ibm.as400.access.AS400Message;
-import com.ibm.as400.access.CommandCall;
 import com.ibm.as400.access.ErrorCompletingRequestException;
+import com.ibm.as400.access.IFSFile;
+import com.ibm.as400.access.IFSFileOutputStream;
 import com.ibm.as400.access.User;
 
 import io.github.theprez.dotenv_ibmi.IBMiDotEnv;
@@ -13,17 +13,36 @@ import io.github.theprez.dotenv_ibmi.IBMiDotEnv;
 import java.beans.PropertyVetoException;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import picocli.CommandLine;
@@ -41,16 +60,43 @@ import picocli.CommandLine.Parameters;
  */
 
 @Command(name = "migrator", description = "Migrates IBM i source physical files to IFS stream files.", mixinStandardHelpOptions = true)
-public class SourceMigrator implements Runnable{
+public class SourceMigrator implements Runnable, AutoCloseable{
   private static final String UTF8_CCSID = "1208"; // UTF-8 for stream files
   public static final String INVARIANT_CCSID = "37"; // EBCDIC
+  public static final String ENGINE_CL = "cl"; // CPYTOSTMF per member
+  public static final String ENGINE_DIRECT = "direct"; // Record level access read in the JVM
+  public static final String FORMAT_DIR = "dir"; // One stream file per member
+  private static final long RETRY_BASE_MILLIS = 250;
+  private static final long RETRY_MAX_MILLIS = 10000;
+  private static final long MEMBER_OVERHEAD_BYTES = 16 * 1024; // Open, copy and close of a member cost about as much as moving this
+
+  /* 
+   * Largest first (LPT): the longest copies start while every thread is free and the small members fill
+   * the gaps at the end, so the run never waits on one big member that started last. Unknown sizes go last.
+   */
+  static final Comparator<SourceMember> LARGEST_FIRST = 
+      Comparator.comparingLong(SourceMember::getDataSize).thenComparingLong(SourceMember::getRows).reversed();
   private final AS400 system;
   private final Connection connection;
   private final User currentUser;
-  private int totalSourcePFsMigrated = 0;
-  private int totalMembersMigrated = 0;
-  private int migrationErrors = 0;
+  private MigrationMetrics metrics = new MigrationMetrics();
   private Utilities utilities;
+  private StatementCache statements; // Prepared once, reused by every run of this instance
+  private MigrationEngine engine;
+  private SystemPool systems;
+  private MemberReader memberReader;
+  private OutputSink output; // Set while members are being migrated
+  private ConcurrencyLimiter limiter; // Same
+  private CheckpointJournal journal; // Same, only for the dir format
+  private CatalogSource catalogSource;
+  private ResidentCatalog residentCatalog; // Shared by the sessions of a long-lived process
+  private Exception lastError; // Of the last api() call
+
+  // Stand-ins for the host servers of an offline run: simulated systems, tests and benchmarks
+  private CatalogSource offlineCatalog;
+  private CommandExecutor offlineCommands; // Closed with the engine, so it must be reusable after close
+  private MemberReader offlineReader;
+  private OutputSink offlineOutput;
 
   static class OutDirConverter implements CommandLine.ITypeConverter<String> {
     @Override
@@ -96,9 +142,36 @@ public class SourceMigrator implements Runnable{
     }
   }
 
+  static class EngineConverter implements CommandLine.ITypeConverter<String> {
+    @Override
+    public String convert(String copyEngine) throws Exception {
+      String value = copyEngine.trim().toLowerCase();
+      if (!ENGINE_CL.equals(value) && !ENGINE_DIRECT.equals(value)) {
+        throw new CommandLine.TypeConversionException("Invalid engine: '" + copyEngine + "'. Expected " + ENGINE_CL + " or " + ENGINE_DIRECT);
+      }
+      return value;
+    }
+  }
+
+  static class FormatConverter implements CommandLine.ITypeConverter<String> {
+    @Override
+    public String convert(String format) throws Exception {
+      String value = format.trim().toLowerCase();
+      if (!FORMAT_DIR.equals(value) && !ArchiveSink.isFormat(value)) {
+        throw new CommandLine.TypeConversionException("Invalid format: '" + format + "'. Expected " + FORMAT_DIR + ", " + 
+            ArchiveSink.FORMAT_ZIP + ", " + ArchiveSink.FORMAT_TAR_GZ + " or " + ArchiveSink.FORMAT_FAST_IMPORT);
+      }
+      return value;
+    }
+  }
+
   //TODO: Make thsese a key library | library.sourcePf | library.sourcepf mbr1 mbr2 mbr3
-  @Option(names = { "-sl", "--source-lib" }, required = true, description = "Source library", converter = LibraryConverter.class)
-  private String library;
+  @Option(names = { "-sl", "--source-lib" }, required = true, arity = "1..*", split = ",", 
+      description = "Source libraries. Accepts a list (LIB1,LIB2) and generic names (APP*)", converter = LibraryConverter.class)
+  private List<String> libraries = new ArrayList<>();
+
+  private List<String> resolvedLibraries = new ArrayList<>(); // Generic names expanded
+  private String library; // Single library of the reverse migration and API calls
 
   @Option(names = "--spf", description = "Source Physical File", converter = SourcePfConverter.class)
   private String sourcePf = "";
@@ -110,6 +183,16 @@ public class SourceMigrator implements Runnable{
   @Option(names = { "-stmf", "--source-stmf" }, description = "Source stream file path in IFS (e.g., /home/sources/hello.rpgle).")
   private String sourceStmf = "";
 
+  @Option(names = "--source-dir", description = "Reverse migration of a whole directory laid out as library/sourcePf/member.type, " + 
+      "the layout the member migration writes. Missing source PFs and members are created")
+  private String sourceDir = "";
+
+  @Option(names = "--changed-only", description = "Reverse migration: skip stream files whose content is already in the member, " + 
+      "so unchanged members keep their change date")
+  private boolean changedOnly = false;
+
+  private final Map<Path, SourceDigests> digests = new ConcurrentHashMap<>(); // Per stream file dir
+
   /* 
   @Option(names = {"-ut", "--updated-time"}, description = "Migrate only sources with change after timestamp")
   private Timestamp updateTime;
@@ -118,24 +201,91 @@ public class SourceMigrator implements Runnable{
   private Timestamp updateTime;
   */
    
+  @Option(names = "--page-size", description = "Catalog rows fetched per round trip (default: ${DEFAULT-VALUE})")
+  private int pageSize = 1000;
+
+  @Option(names = "--catalog-cache", description = "File to keep the catalog snapshot in between runs")
+  private String catalogCache = "";
+
+  @Option(names = "--catalog-ttl", description = "Seconds a cached catalog snapshot stays valid (default: ${DEFAULT-VALUE})")
+  private long catalogTtl = 300;
+
+  @Option(names = "--max-in-flight", description = "Members queued or copying at the same time. 0 uses twice the threads (default: ${DEFAULT-VALUE})")
+  private int maxInFlight = 0;
+
+  @Option(names = "--adaptive", description = "Let the members in flight follow the host: more while its latency stays flat, " + 
+      "fewer when it climbs or calls fail. Moves between 1 and --threads")
+  private boolean adaptive = false;
+
+  @Option(names = "--retries", description = "Times a member is copied again after a failure that can pass, like a lock wait, " + 
+      "with a growing random delay in between (default: ${DEFAULT-VALUE})")
+  private int retries = 2;
+
+  @Option(names = "--batch-size", description = "Send CL commands in batches of this size, each one a single query over the " + 
+      "QSYS2.QCMDEXC scalar function. A batch holds at most --threads commands, a larger size is cut to it. " + 
+      "0 or 1 runs one CommandCall per command (default: ${DEFAULT-VALUE})")
+  private int batchSize = 0;
+
+  @Option(names = "--engine", description = "How members are copied: " + ENGINE_CL + " runs CPYTOSTMF per member, " + ENGINE_DIRECT + 
+      " reads the records in the JVM and writes the stream file itself (default: ${DEFAULT-VALUE})", converter = EngineConverter.class)
+  private String copyEngine = ENGINE_CL;
+
+  @Option(names = "--local", description = "Run off the IBM i: members are read over the host servers and -o is a dir " + 
+      "of this machine. Implies the " + ENGINE_DIRECT + " engine")
+  private boolean local = false;
+
+  @Option(names = "--format", description = "Output of the member migration: " + FORMAT_DIR + " writes a stream file per member, " + 
+      ArchiveSink.FORMAT_ZIP + " and " + ArchiveSink.FORMAT_TAR_GZ + " write every member into one archive named after -o, " + 
+      ArchiveSink.FORMAT_FAST_IMPORT + " writes a git fast-import stream with one commit (default: ${DEFAULT-VALUE})", 
+      converter = FormatConverter.class)
+  private String format = FORMAT_DIR;
+
+  @Option(names = { "-i", "--incremental" }, description = "Migrate only new or changed members, based on the manifest left by the previous run")
+  private boolean incremental = false;
+
+  @Option(names = "--prune", description = "Delete stream files of members that no longer exist. Requires --incremental")
+  private boolean prune = false;
+
+  @Option(names = "--resume", description = "Continue an interrupted run: skip the members the journal of the output dir " + 
+      "says were finished and have not changed since")
+  private boolean resume = false;
+
+  @Option(names = "--watch", description = "Keep running after the migration: every this many seconds, migrate the members " + 
+      "edited since. Connections, jobs and catalog stay open in between. Implies --incremental. 0 runs once (default: ${DEFAULT-VALUE})")
+  private long watchSeconds = 0;
+
+  private volatile CountDownLatch watchStop; // Set while watching
+
   @Option(names = "-o", description = "Sources destination", converter = OutDirConverter.class)
   private String outDir = "sources";
 
+  @Option(names = { "-t", "--threads" }, description = "Number of members migrated at the same time. Each one uses its own host server job (default: ${DEFAULT-VALUE})")
+  private int threads = MigrationEngine.DEFAULT_THREADS;
+
+  @Option(names = "--log-file", description = "Also write the member lines, with a timestamp, to this file. With -x the commands and stack traces too")
+  private String logFile = "";
+
   @Option(names = "-x", description = "Debug")
   private boolean debug = false;
 
   @Option(names = "-v", description = "Verbose output")
   private boolean verbose = false;
 
-  @Option(names = "--json", description = "Output as JSON")
+  @Option(names = "--json", description = "Print the migration report as JSON")
   private boolean jsonOutput = false;
 
+  @Option(names = "--report-file", description = "Also write the JSON migration report to this file")
+  private String reportFile = "";
+
   @Option(names = { "-h", "--help" }, usageHelp = true, description = "Migrates IBM i source physical files to IFS stream files")
   private boolean helpRequested = false;
 
-  private List<String> migratedPaths = new ArrayList<>();
+  private final Queue<String> migratedPaths = new ConcurrentLinkedQueue<>(); // Filled from every migration thread
+  private final List<MigrationListener> listeners = new CopyOnWriteArrayList<>();
+  private final MigrationLog log = new MigrationLog();
 
   private boolean returnPaths = false;
+  private boolean fanOut = false; // One system of a MultiSystemMigrator run, which reports for all of them
 
   /*
    * Constructor initializes the AS400 connection and JDBC.
@@ -172,23 +322,147 @@ public class SourceMigrator implements Runnable{
     this(system, connection, debug, verbose);
 
     this.library = library;
+    this.libraries = new ArrayList<>(Arrays.asList(library));
     this.sourcePf = sourcePf;
     this.members = members;
     this.outDir = outDir;
 
   }
 
+  /*
+   * Offline: no AS400 nor connection. The catalog, commands and member content come from the given
+   * stand-ins, like a simulated system, and the output is written locally as with --local.
+   */
+  public SourceMigrator(CatalogSource catalog, CommandExecutor commands, MemberReader memberReader) {
+    this(null, catalog, commands, memberReader, null);
+  }
+
+  /* Offline with a stand-in for the JDBC layer too. Null output means the output of the format. */
+  SourceMigrator(Connection connection, CatalogSource catalog, CommandExecutor commands, MemberReader memberReader, 
+      OutputSink output) {
+    if (commands == null) throw new IllegalArgumentException("Command executor can not be null");
+    if (memberReader == null) throw new IllegalArgumentException("Member reader can not be null");
+
+    this.system = null;
+    this.connection = connection;
+    this.currentUser = null;
+    this.offlineCatalog = catalog;
+    this.offlineCommands = commands;
+    this.offlineReader = memberReader;
+    this.offlineOutput = output;
+    this.local = true;
+    this.utilities = new Utilities((StatementCache) null, null, false);
+    this.utilities.setLocalOutput(true);
+  }
+
   @Override
   public void run() {
     try {
       api();
     } catch (Exception e) {
+      log.flush();
       e.printStackTrace();
     } finally {
       cleanup();
     }
   }
 
+  public void setThreads(int threads){
+    if (threads < 1) throw new IllegalArgumentException("Threads must be greater than zero");
+    if (threads == this.threads) return;
+
+    this.threads = threads;
+    closeEngine(); // Rebuilt with the new size on the next run
+  }
+
+  public int getThreads(){
+    return threads;
+  }
+
+  public void setPageSize(int pageSize){
+    if (pageSize < 1) throw new IllegalArgumentException("Page size must be greater than zero");
+    this.pageSize = pageSize;
+  }
+
+  public void setMaxInFlight(int maxInFlight){
+    if (maxInFlight < 0) throw new IllegalArgumentException("Max in flight can not be negative");
+    this.maxInFlight = maxInFlight;
+  }
+
+  private int getMaxInFlight(){
+    return maxInFlight > 0 ? maxInFlight : threads * 2; // Enough to keep every thread busy while the next page loads
+  }
+
+  public void setAdaptive(boolean adaptive){
+    this.adaptive = adaptive;
+  }
+
+  public void setRetries(int retries){
+    if (retries < 0) throw new IllegalArgumentException("Retries can not be negative");
+    this.retries = retries;
+  }
+
+  /* Fixed at maxInFlight, or adaptive up to one member per engine thread: more would only wait in the engine queue. */
+  private ConcurrencyLimiter newLimiter(){
+    if (!adaptive) return ConcurrencyLimiter.fixed(getMaxInFlight());
+    return ConcurrencyLimiter.adaptive(Math.max(1, threads / 4), threads);
+  }
+
+  public void setBatchSize(int batchSize){
+    if (batchSize < 0) throw new IllegalArgumentException("Batch size can not be negative");
+    if (batchSize == this.batchSize) return;
+
+    this.batchSize = batchSize;
+    closeEngine(); // Rebuilt with the new backend on the next run
+  }
+
+  public void setCopyEngine(String copyEngine) throws Exception{
+    this.copyEngine = new EngineConverter().convert(copyEngine);
+  }
+
+  public void setFormat(String format) throws Exception{
+    this.format = new FormatConverter().convert(format);
+  }
+
+  public void setLocal(boolean local){
+    this.local = local;
+  }
+
+  public void setIncremental(boolean incremental){
+    this.incremental = incremental;
+  }
+
+  public void setResume(boolean resume){
+    this.resume = resume;
+  }
+
+  public void setWatch(long watchSeconds){
+    if (watchSeconds < 0) throw new IllegalArgumentException("Watch interval can not be negative");
+    this.watchSeconds = watchSeconds;
+  }
+
+  /* Ends the watch of api() once the pass in progress, if any, is finished. */
+  public void stopWatch(){
+    CountDownLatch stop = watchStop;
+    if (stop != null) stop.countDown();
+  }
+
+  /* Runs as one system of a fan-out: its lines are prefixed with the name, the fan-out shows the report. */
+  void setFanOut(String name){
+    this.fanOut = true;
+    log.setPrefix("[" + name + "] ");
+    log.setProgress(false);
+  }
+
+  /* Catalogs of the runs come from, and stay in, the resident catalog. See MigrationServer */
+  public void setResidentCatalog(ResidentCatalog residentCatalog){
+    this.residentCatalog = residentCatalog;
+  }
+
+  public void setChangedOnly(boolean changedOnly){
+    this.changedOnly = changedOnly;
+  }
+
   public void setMigrationParams(String srcfileCmd, String members, String outDir){
     this.setMigrationParams(srcfileCmd, Arrays.asList(members), outDir);
   }
@@ -208,9 +482,11 @@ public class SourceMigrator implements Runnable{
 
   public void setMigrationParams(String library, String sourcePf, List<String> members, String outDir){
     this.library = library;
+    this.libraries = new ArrayList<>(Arrays.asList(library));
     this.sourcePf = sourcePf;
     this.members = members;
     this.outDir = outDir;
+    this.sourceStmf = ""; // A reverse migration set before on this instance
 
     this.returnPaths = true;
   }
@@ -234,6 +510,7 @@ public class SourceMigrator implements Runnable{
 
   public void setReverseMigrationParams(String library, String sourcePf, List<String> members, String streamFile){
     this.library = library;
+    this.libraries = new ArrayList<>(Arrays.asList(library));
     this.sourcePf = sourcePf;
     this.members = members;
     this.sourceStmf = streamFile;
@@ -243,27 +520,94 @@ public class SourceMigrator implements Runnable{
 
   public void api(){
     try {
+      metrics = new MigrationMetrics(); // Each run reports its own numbers
+      migratedPaths.clear();
+      lastError = null;
+      log.setLevel(verbose, debug);
+      if (!logFile.isEmpty()) log.openFile(Paths.get(logFile));
 
       // Utilities
-      this.utilities = new Utilities(connection, currentUser, verbose);
+      if (statements == null) statements = new StatementCache(connection);
+      this.utilities = new Utilities(statements, currentUser, verbose);
+      utilities.setLocalOutput(local);
+      utilities.setLog(log);
+      catalogSource = offlineCatalog != null ? offlineCatalog : new SqlCatalogSource(statements, utilities, pageSize);
+      if (residentCatalog != null) catalogSource = residentCatalog.over(catalogSource);
+
+      if (local && (!this.sourceStmf.isEmpty() || !this.sourceDir.isEmpty())) {
+        throw new IllegalArgumentException("--local only applies to the member migration.");
+      }
 
-      utilities.validateLibrary(library);
+      // Engine
+      if (engine == null) {
+        startEngine();
+      }
 
-      if(this.sourceStmf.isEmpty()){
+      // Member migration answers every validation from one catalog snapshot
+      if (this.sourceStmf.isEmpty()) {
+        utilities.setCatalog(loadCatalog());
+      }
+
+      resolvedLibraries = utilities.resolveLibraries(libraries); // Validates names and expands generic ones
+      if (resolvedLibraries.size() == 1) library = resolvedLibraries.get(0);
+
+      if (!this.sourceStmf.isEmpty() && !this.sourceDir.isEmpty()) {
+        throw new IllegalArgumentException("Use either a source stream file or a source dir, not both.");
+      }
+
+      if (!this.sourceDir.isEmpty()) {
+        sourceDirMigration();
+      } else if(this.sourceStmf.isEmpty()){
         memberMigration(); // If no stream file is provided, then it is a member migration.
       } else {
+        if (resolvedLibraries.size() != 1) {
+          throw new IllegalArgumentException("A stream file can only be migrated to a single library.");
+        }
         streamFileMigration();
       }
       
     } catch (Exception e) {
+      lastError = e;
+      log.flush();
       e.printStackTrace();
+    } finally {
+      log.flush();
+    }
+  }
+
+  /* What stopped the last api() call, null if it ran to the end. Failed members are in the metrics. */
+  public Exception getLastError(){
+    return lastError;
+  }
+
+  private SourceCatalog loadCatalog() throws SQLException, IOException {
+    Path cacheFile = catalogCache.isEmpty() ? null : Paths.get(utilities.getIFSPath(catalogCache));
+
+    if (cacheFile != null) {
+      SourceCatalog cached = SourceCatalog.readCache(cacheFile, catalogTtl, libraries);
+      if (cached != null) {
+        log.detail("Catalog from cache: " + cached.size() + " members");
+        return cached;
+      }
     }
+
+    long start = System.nanoTime();
+    SourceCatalog catalog = catalogSource.load(libraries);
+    if (verbose) {
+      log.detail(String.format("Catalog loaded: %d members in %.2f seconds", catalog.size(), (System.nanoTime() - start) / 1e9));
+    }
+
+    if (cacheFile != null) catalog.save(cacheFile);
+    return catalog;
   }
 
   public void streamFileMigration() throws SQLException, IOException{
     if (sourcePf.isEmpty()) {
       throw new IllegalArgumentException("Source PF must be provided.");
     }
+    if (changedOnly && !utilities.isDirectAccess()) {
+      throw new IllegalArgumentException("--changed-only reads the stream file and its digests: run it on the IBM i.");
+    }
 
     try {
       utilities.validateSourcePFs(sourcePf, library); // Validate if SourcePf exists.
@@ -287,224 +631,927 @@ public class SourceMigrator implements Runnable{
       members = Arrays.asList(name);
     }
 
+    boolean created = false;
     try{
       utilities.validateMembers(library, sourcePf, members); // Validate if Member exists.
     } catch (IllegalArgumentException e) {
       createSourceMember(library + "/" + sourcePf, members.get(0), sourceType);
+      created = true;
     }
 
-    migrateStreamFile(sourceStmf, library, sourcePf, members.get(0), sourceType);
+    if (migrateStreamFile(sourceStmf, library, sourcePf, members.get(0), sourceType, changedOnly && !created)) {
+      log.info("Migrated " + sourceStmf + " to " + library + "/" + sourcePf + "(" + members.get(0) + ")");
+    }
+    saveDigests();
 
   }
 
   public void createSourcePf(String qualifiedSourcePf){
-    try{
-      String commandStr = "CRTSRCPF FILE(" + qualifiedSourcePf + ")";
-      
-      System.out.println("Command: " + commandStr);
-      CommandCall cmd = new CommandCall(system);
-
-      if (!cmd.run(commandStr)) {
-        System.out.println("Could not execute command");
-        AS400Message[] messages = cmd.getMessageList();
-        for (AS400Message msg : messages) {
-          System.out.println(msg.getID() + ": " + msg.getText());
-        }
-      } else {
-        System.out.println("Command executed");
+    String commandStr = "CRTSRCPF FILE(" + qualifiedSourcePf + ")";
+
+    log.info("Command: " + commandStr);
+    runCommand(commandStr);
+  }
+
+  public void createSourceMember(String qualifiedSourcePf, String member, String sourceType){
+    String commandStr = "ADDPFM FILE(" + qualifiedSourcePf + ") " +
+      "MBR(" + member + ") SRCTYPE(" + sourceType + ")";
+
+    log.info("Command: " + commandStr);
+    runCommand(commandStr);
+  }
+
+  private void runCommand(String commandStr){
+    CommandResult result = engine.run(commandStr);
+
+    if (!result.isSuccess()) {
+      log.error("Could not execute command");
+      printMessages(result);
+    } else {
+      log.info("Command executed");
+    }
+  }
+
+  private void printMessages(CommandResult result){
+    for (String message : result.getMessages()) {
+      log.error(message);
+    }
+    if (result.getError() != null) {
+      log.error("Caused by " + result.getError(), result.getError());
+    }
+  }
+
+  public boolean migrateStreamFile(String ifsPath, String library, String sourcePf, String member, String sourceType){
+    return migrateStreamFile(ifsPath, library, sourcePf, member, sourceType, changedOnly);
+  }
+
+  /* With compare, the copy is skipped when the member already has the content of the stream file. */
+  private boolean migrateStreamFile(String ifsPath, String library, String sourcePf, String member, String sourceType, 
+      boolean compare){
+    if (compare && isUnchanged(Paths.get(ifsPath), library, sourcePf, member)) {
+      log.detail("Unchanged SourcePf: " + sourcePf + " | member: " + member + "." + sourceType + ": Skipped");
+      metrics.recordUnchanged();
+      finished(new MemberResult(library, sourcePf, member, sourceType, ifsPath, MemberResult.Status.UNCHANGED, 0, 0, null));
+      return true;
+    }
+
+    String commandStr = "CPYFRMSTMF FROMSTMF('" + ifsPath + "') " +
+        "TOMBR('/QSYS.lib/" + library + ".lib/" + sourcePf + ".file/" + member + ".mbr') " +
+        "MBROPT(*REPLACE) " +
+        "CVTDTA(*AUTO) " +  // Enable automatic CCSID conversion
+        "STMFCODPAG(" + UTF8_CCSID + ") "   // Source stream file CCSID (UTF-8)
+        //"DBFCCSID(" + INVARIANT_CCSID + ")"  // Target database member CCSID (EBCDIC 37)
+        //"DBFCCSID(" + utilities.getCcsid() + ")"  // Target database member CCSID (EBCDIC 37)
+        ;
+
+    log.debug("Command: " + commandStr);
+    long start = System.nanoTime();
+    CommandResult result = engine.run(commandStr);
+    long latency = System.nanoTime() - start;
+
+    if (!result.isSuccess()) {
+      log.error("Could not migrate " + ifsPath + ": Failed");
+      printMessages(result);
+      metrics.recordError(library, sourcePf, latency);
+      finished(new MemberResult(library, sourcePf, member, sourceType, ifsPath, MemberResult.Status.FAILED, latency, 0, 
+          result.getMessageIds()));
+      return false;
+    }
+    log.detail("Migrated SourcePf: " + sourcePf + " | member: " + member + "." + sourceType + ": OK");
+    long bytes = streamFileSize(ifsPath);
+    metrics.recordMigrated(library, sourcePf, latency, bytes);
+    finished(new MemberResult(library, sourcePf, member, sourceType, ifsPath, MemberResult.Status.MIGRATED, latency, bytes, 
+        result.getMessageIds()));
+    if (compare) {
+      getDigests(Paths.get(ifsPath)).remove(SourceDigests.key(library, sourcePf, member)); // New timestamp is unknown until the next catalog
+    }
+    return true;
+  }
+
+  /*
+   * Compares the stream file with the current member content, both hashed with SHA-256.
+   * The member digest is taken from the sidecar while its change timestamp matches the catalog,
+   * otherwise the member is read once. Any doubt means changed: a copy too many is harmless.
+   */
+  private boolean isUnchanged(Path streamFile, String library, String sourcePf, String member) {
+    SourceCatalog catalog = utilities.getCatalog();
+    SourceMember current = catalog == null ? null : catalog.getMember(library, sourcePf, member);
+    String lastUpdate = current == null ? null : current.getLastUpdate();
+
+    try {
+      SourceDigests known = getDigests(streamFile);
+      String key = SourceDigests.key(library, sourcePf, member);
+      String memberDigest = known.get(key, lastUpdate);
+      if (memberDigest == null) {
+        memberDigest = SourceDigests.sha256(memberReader.read(library, sourcePf, member));
+        known.put(key, lastUpdate, memberDigest);
       }
+      return memberDigest.equals(SourceDigests.ofStreamFile(streamFile));
 
-    } catch (AS400SecurityException | ErrorCompletingRequestException | IOException | InterruptedException
-        | PropertyVetoException e) {
-      e.printStackTrace();
+    } catch (IOException | UncheckedIOException e) {
+      log.detail("Could not compare " + streamFile + ": " + e.getMessage());
+      return false;
     }
   }
 
-  public void createSourceMember(String qualifiedSourcePf, String member, String sourceType){
-    try{
-      String commandStr = "ADDPFM FILE(" + qualifiedSourcePf + ") " +
-        "MBR(" + member + ") SRCTYPE(" + sourceType + ")";
-      
-      System.out.println("Command: " + commandStr);
-      CommandCall cmd = new CommandCall(system);
-
-      if (!cmd.run(commandStr)) {
-        System.out.println("Could not execute command");
-        AS400Message[] messages = cmd.getMessageList();
-        for (AS400Message msg : messages) {
-          System.out.println(msg.getID() + ": " + msg.getText());
-        }
-      } else {
-        System.out.println("Command executed");
+  private SourceDigests getDigests(Path streamFile) {
+    return digests.computeIfAbsent(streamFile.toAbsolutePath().getParent(), dir -> {
+      try {
+        return SourceDigests.load(dir);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+    });
+  }
 
-    } catch (AS400SecurityException | ErrorCompletingRequestException | IOException | InterruptedException
-        | PropertyVetoException e) {
-      e.printStackTrace();
+  private void saveDigests() throws IOException {
+    for (SourceDigests known : digests.values()) {
+      known.save();
     }
+    digests.clear();
   }
 
-  public void migrateStreamFile(String ifsPath, String library, String sourcePf, String member, String sourceType){
+  /*
+   * Reverse migration of sourceDir/library/sourcePf/member.type
+   * Missing source PFs and members are found in the catalog and created up front, each group in parallel,
+   * then every CPYFRMSTMF runs on the worker pool with the same in-flight bound as the member migration.
+   */
+  public void sourceDirMigration() throws IOException, SQLException, InterruptedException {
+    if (!utilities.isDirectAccess()) {
+      throw new IllegalArgumentException("--source-dir walks the stream files of the dir: run it on the IBM i.");
+    }
+    String rootDir = utilities.getIFSPath(sourceDir);
+    if (!utilities.validateIFSPath(rootDir)) {
+      throw new IllegalArgumentException(" *Path does not exists: " + rootDir);
+    }
+
+    StreamFileTree tree = StreamFileTree.scan(Paths.get(rootDir), resolvedLibraries, sourcePf, members);
+    for (Path skipped : tree.getSkipped()) {
+      log.info("Skipped, not a valid source PF or member name: " + skipped);
+    }
+
+    startMetrics();
+    SourceCatalog catalog = utilities.getCatalog();
+
+    // Bulk create what is missing, so the copies below are the only per member commands
+    List<String> sourcePfs = new ArrayList<>(tree.getMissingSourcePfs(catalog));
+    Set<String> failedSourcePfs = new HashSet<>();
+    List<CommandResult> created = runAll(sourcePfs.stream()
+        .map(qualifiedSourcePf -> "CRTSRCPF FILE(" + qualifiedSourcePf + ")").collect(Collectors.toList()));
+    for (int i = 0; i < created.size(); i++) {
+      if (!isCreated(created.get(i), "CPF5813")) failedSourcePfs.add(sourcePfs.get(i)); // CPF5813: PF exists without members
+    }
+
+    List<SourceMember> newMembers = tree.getMissingMembers(catalog).stream()
+        .filter(m -> !failedSourcePfs.contains(m.getLibrary() + "/" + m.getSourcePf())).collect(Collectors.toList());
+    Set<SourceMember> failedMembers = new HashSet<>();
+    Set<SourceMember> createdMembers = new HashSet<>(newMembers); // Nothing to compare them with
+    created = runAll(newMembers.stream()
+        .map(m -> "ADDPFM FILE(" + m.getLibrary() + "/" + m.getSourcePf() + ") MBR(" + m.getMember() + ") SRCTYPE(" + m.getSourceType() + ")")
+        .collect(Collectors.toList()));
+    for (int i = 0; i < created.size(); i++) {
+      if (isCreated(created.get(i), "CPF5812")) catalog.add(newMembers.get(i)); // CPF5812: member exists without source type
+      else failedMembers.add(newMembers.get(i));
+    }
+
+    log.detail("Stream files: " + tree.getFiles().size() + " | source PFs created: " + 
+        (sourcePfs.size() - failedSourcePfs.size()) + " | members created: " + (newMembers.size() - failedMembers.size()));
+
+    log.startProgress(tree.getFiles().size(), metrics::getMembersDone);
+    int maxInFlight = getMaxInFlight();
+    Semaphore inFlight = new Semaphore(maxInFlight);
     try {
-      String commandStr = "CPYFRMSTMF FROMSTMF('" + ifsPath + "') " +
-          "TOMBR('/QSYS.lib/" + library + ".lib/" + sourcePf + ".file/" + member + ".mbr') " +
-          "MBROPT(*REPLACE) " +
-          "CVTDTA(*AUTO) " +  // Enable automatic CCSID conversion
-          "STMFCODPAG(" + UTF8_CCSID + ") "   // Source stream file CCSID (UTF-8)
-          //"DBFCCSID(" + INVARIANT_CCSID + ")"  // Target database member CCSID (EBCDIC 37)
-          //"DBFCCSID(" + utilities.getCcsid() + ")"  // Target database member CCSID (EBCDIC 37)
-          ;
-        
-      System.out.println("Command: " + commandStr);
-      CommandCall cmd = new CommandCall(system);
-
-      if (!cmd.run(commandStr)) {
-        System.out.println("Could not migrate " + ifsPath + ": Failed");
-        AS400Message[] messages = cmd.getMessageList();
-        for (AS400Message msg : messages) {
-          System.out.println(msg.getID() + ": " + msg.getText());
-        }
-        migrationErrors++;
-      } else {
-        System.out.println("Migrated SourcePf: " + sourcePf + " | member: " + member + "." + sourceType + ": OK");
-        totalMembersMigrated++;
-        if (returnPaths){
-          migratedPaths.add(ifsPath);
+      for (StreamFileTree.StreamFile file : tree.getFiles()) {
+        SourceMember m = file.getMember();
+        if (failedMembers.contains(m) || failedSourcePfs.contains(m.getLibrary() + "/" + m.getSourcePf())) {
+          log.error("Could not migrate " + file.getPath() + ": target member could not be created");
+          metrics.recordError(m.getLibrary(), m.getSourcePf(), 0);
+          finished(new MemberResult(m.getLibrary(), m.getSourcePf(), m.getMember(), m.getSourceType(), file.getPath().toString(), 
+              MemberResult.Status.FAILED, 0, 0, null));
+          continue;
         }
+
+        inFlight.acquire();
+        boolean compare = changedOnly && !createdMembers.contains(m);
+        engine.submit(() -> migrateStreamFile(file.getPath().toString(), m.getLibrary(), m.getSourcePf(), m.getMember(), m.getSourceType(), compare))
+          .whenComplete((migrated, error) -> inFlight.release());
       }
+    } finally {
+      inFlight.acquireUninterruptibly(maxInFlight); // Wait for the copies still running
+      inFlight.release(maxInFlight);
+    }
+    saveDigests();
 
-    } catch (AS400SecurityException | ErrorCompletingRequestException | IOException | InterruptedException
-        | PropertyVetoException e) {
+    metrics.stop();
+    report();
+  }
 
-      System.out.println("Could not migrate " + ifsPath + ": Failed");
-      migrationErrors++;
-      e.printStackTrace();
+  /* Runs the commands on the worker pool and waits for all of them. Results keep the order of the commands. */
+  private List<CommandResult> runAll(List<String> commands) {
+    List<CompletableFuture<CommandResult>> futures = new ArrayList<>();
+    for (String commandStr : commands) {
+      log.debug("Command: " + commandStr);
+      futures.add(engine.submit(commandStr));
+    }
+    List<CommandResult> results = new ArrayList<>();
+    for (CompletableFuture<CommandResult> future : futures) {
+      results.add(future.join());
     }
+    return results;
+  }
+
+  /* A create command that failed only because the object is already there counts as created. */
+  private boolean isCreated(CommandResult result, String existsMessageId) {
+    if (result.isSuccess() || result.getMessageIds().contains(existsMessageId)) return true;
+
+    log.error("Could not execute command: " + result.getCommand());
+    printMessages(result);
+    return false;
   }
 
   public void memberMigration() throws IOException, SQLException, AS400SecurityException, ErrorCompletingRequestException, 
       InterruptedException, PropertyVetoException{
-    outDir = utilities.getIFSPath(outDir); // Get source dir
-    utilities.createDirectory(outDir + "/" + library);
+    outDir = utilities.getOutputPath(outDir); // Get source dir
 
     if (!members.isEmpty() && sourcePf.isEmpty()) {
       throw new IllegalArgumentException("Members can only be specified when a specific source PF is provided.");
     }
-    
-    /* No specific sourcPf nor Members is provided: Migrate all sourcePf with their members */
-    if(sourcePf.isEmpty() && members.isEmpty()){
-      utilities.createDirectory(outDir, library);
+
+    if (!members.isEmpty() && resolvedLibraries.size() > 1) {
+      throw new IllegalArgumentException("Members can only be specified for a single library.");
+    }
+
+    boolean toDirs = FORMAT_DIR.equals(format); // An archive needs no dirs, only its parent
+    if (watchSeconds > 0) {
+      if (!toDirs) throw new IllegalArgumentException("--watch keeps a stream file tree current, it can not be used with --format " + format + ".");
+      incremental = true; // Each pass only copies what the manifest does not have
+    }
+
+    if (prune && !incremental) {
+      throw new IllegalArgumentException("--prune can only be used with --incremental.");
+    }
+
+    if (!toDirs && incremental) {
+      throw new IllegalArgumentException("--incremental needs the stream files of the previous run, it can not be used with --format " + format + ".");
+    }
+    if (!toDirs && resume) {
+      throw new IllegalArgumentException("--resume continues the stream files of an interrupted run, it can not be used with --format " + format + ".");
+    }
+    if (resume && !utilities.isDirectAccess()) {
+      throw new IllegalArgumentException("--resume reads the journal of the output dir: run it on the IBM i or with --local.");
+    }
+    if (incremental && !utilities.isDirectAccess()) {
+      throw new IllegalArgumentException("--incremental reads the manifest of the output dir: run it on the IBM i or with --local.");
+    }
+    if (!toDirs) {
+      utilities.createDirectory(ArchiveSink.getArchivePath(outDir, format).getParent().toString());
+    }
+
+    for (String library : resolvedLibraries) {
+      if (toDirs) utilities.createDirectory(outDir + "/" + library);
+
+      /* No specific sourcPf nor Members is provided: Migrate all sourcePf with their members */
+      if(sourcePf.isEmpty() && members.isEmpty() && toDirs){
+        utilities.createDirectory(outDir, library);
+      }
+
+      /* Specific SourcPf and no Members. With many libraries, only the ones that have it */
+      if(!sourcePf.isEmpty() && members.isEmpty()){
+        if (resolvedLibraries.size() == 1) {
+          utilities.validateSourcePFs(sourcePf, library);
+        } else if (!utilities.existsSourcePf(sourcePf, library)) {
+          continue;
+        }
+        if (toDirs) utilities.createDirectory(outDir, library, sourcePf);
+      }
+
+      /* Specific SourcPf and Members */
+      if (!sourcePf.isEmpty() && !members.isEmpty()) {
+        utilities.validateSourcePFs(sourcePf, library);
+        if (toDirs) utilities.createDirectory(outDir, library, sourcePf);
+        members = members.stream().map(String::trim).map(String::toUpperCase).distinct().collect(Collectors.toList());
+        utilities.validateMembers(library, sourcePf, members);
+      }
+    }
+
+    List<SourceMember> work = utilities.getCatalog().select(resolvedLibraries, sourcePf, members);
+
+    startMetrics();
+
+    // The API path migrates a handful of members, the manifest is only kept when asked for. Like the journal, only where it can be read back
+    Map<String, MigrationManifest> manifests = new HashMap<>();
+    if ((incremental || !returnPaths) && toDirs && utilities.isDirectAccess()) {
+      for (String library : resolvedLibraries) {
+        MigrationManifest manifest = MigrationManifest.load(outDir + "/" + library);
+        if (incremental) log.detail("Manifest entries of " + library + ": " + manifest.size());
+        manifests.put(library, manifest);
+      }
     }
 
-    /* Specific SourcPf and no Members */
-    if(!sourcePf.isEmpty() && members.isEmpty()){
-      utilities.validateSourcePFs(sourcePf, library);
-      utilities.createDirectory(outDir, library, sourcePf);
+    // Every CLI run keeps a journal, so it can be resumed if it does not finish
+    if ((resume || !returnPaths) && toDirs && utilities.isDirectAccess()) {
+      utilities.createDirectory(outDir);
+      journal = resume ? CheckpointJournal.resume(Paths.get(outDir)) : CheckpointJournal.create(Paths.get(outDir));
+      if (resume) log.info("Members finished by the interrupted run: " + journal.size());
+    }
+    try {
+      migrateMembers(work, outDir, manifests);
+    } finally {
+      if (journal != null) {
+        journal.close();
+        journal = null;
+      }
     }
 
-    /* Specific SourcPf and Members */
-    if (!sourcePf.isEmpty() && !members.isEmpty()) {
-      utilities.validateSourcePFs(sourcePf, library);
-      utilities.createDirectory(outDir, library, sourcePf);
-      members = members.stream().map(String::trim).map(String::toUpperCase).distinct().collect(Collectors.toList());
-      utilities.validateMembers(library, sourcePf, members);
+    for (MigrationManifest manifest : manifests.values()) {
+      manifest.save();
     }
 
-    String querySources = utilities.getMigrationQuery(library, sourcePf, members);
+    metrics.stop();
+    report();
+
+    if (watchSeconds > 0) watch(manifests);
+  }
+
+  /*
+   * Polls the catalog every watchSeconds on the same connection, jobs and statements. An idle pass
+   * is one probe query of a single row, the catalog is only loaded again when the probe changes.
+   * A failed pass is reported and the next one tries again. Ctrl-C ends the watch after the pass in progress.
+   */
+  private void watch(Map<String, MigrationManifest> manifests) throws InterruptedException {
+    CountDownLatch stop = new CountDownLatch(1);
+    CountDownLatch stopped = new CountDownLatch(1);
+    Thread hook = new Thread(() -> {
+      stop.countDown();
+      try {
+        stopped.await(1, TimeUnit.MINUTES); // Lets the pass save its manifests
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "migrator-watch-stop");
+    Runtime.getRuntime().addShutdownHook(hook);
+    watchStop = stop;
 
-    //TODO: Add verbose validation
-    System.out.println("User: " + system.getUserId().trim().toUpperCase());
-    System.out.println("System: " + utilities.getSystemName());
-    System.out.println("System's CCSID: " + utilities.getCcsid());
+    log.info("Watching for changes every " + watchSeconds + " seconds");
+    String lastProbe = null; // The first pass always compares, something may have changed during the full run
+    try {
+      while (!stop.await(watchSeconds, TimeUnit.SECONDS)) {
+        try {
+          String probe = catalogSource.probe(libraries);
+          if (probe != null && probe.equals(lastProbe)) continue;
+          lastProbe = probe;
+          watchPass(manifests);
+        } catch (SQLException | IOException | RuntimeException e) {
+          lastProbe = null;
+          log.error("Watch pass failed: " + e.getMessage(), e);
+        }
+      }
+    } finally {
+      watchStop = null;
+      stopped.countDown();
+      try {
+        Runtime.getRuntime().removeShutdownHook(hook);
+      } catch (IllegalStateException e) {
+        // Already shutting down, the hook is the one waiting for us
+      }
+      log.flush();
+    }
+  }
 
-    long startTime = System.nanoTime();
+  /* Migrates the members whose change timestamp is not the one of the manifest, and prunes the deleted ones. */
+  private void watchPass(Map<String, MigrationManifest> manifests) throws SQLException, IOException, InterruptedException {
+    SourceCatalog catalog = catalogSource.load(libraries);
+    utilities.setCatalog(catalog);
+    List<SourceMember> work = catalog.select(resolvedLibraries, sourcePf, members);
+    if (!hasChanges(work, manifests)) return;
+
+    metrics = new MigrationMetrics();
+    metrics.start();
+    migrateMembers(work, outDir, manifests);
+    for (MigrationManifest manifest : manifests.values()) {
+      manifest.save();
+    }
+    metrics.stop();
 
-    migrateMember(querySources, outDir + "/" + library, library);
+    log.stopProgress();
+    log.info(String.format("Changes migrated: %d members | errors: %d | removed: %d | %.2f seconds", 
+        metrics.getMembersMigrated(), metrics.getMigrationErrors(), metrics.getRemovedMembers(), metrics.getElapsedSeconds()));
+  }
 
+  /* Members not in the manifest or changed since, or with --prune members the catalog no longer has. */
+  private boolean hasChanges(List<SourceMember> work, Map<String, MigrationManifest> manifests) {
+    Map<String, Set<String>> seen = new HashMap<>();
+    for (SourceMember member : work) {
+      MigrationManifest manifest = manifests.get(member.getLibrary());
+      String key = MigrationManifest.key(member.getSourcePf(), member.getMember(), member.getSourceType());
+      if (manifest == null || !manifest.isCurrent(key, member.getLastUpdate())) return true;
+      seen.computeIfAbsent(member.getLibrary(), lib -> new HashSet<>()).add(key);
+    }
+    if (!prune || !members.isEmpty()) return false;
+
+    for (Map.Entry<String, MigrationManifest> entry : manifests.entrySet()) {
+      Set<String> seenInLibrary = seen.getOrDefault(entry.getKey(), new HashSet<String>());
+      if (!entry.getValue().getRemoved(seenInLibrary, sourcePf).isEmpty()) return true;
+    }
+    return false;
+  }
+
+  private void startMetrics() throws SQLException {
+    String user = getUserId();
+    String systemName = catalogSource.getSystemName();
+    String ccsid = catalogSource.getCcsid();
+
+    if (!jsonOutput) {
+      log.info("User: " + user);
+      log.info("System: " + systemName);
+      log.info("System's CCSID: " + ccsid);
+    }
+
+    metrics.putContext("user", user);
+    metrics.putContext("system", systemName);
+    metrics.putContext("ccsid", ccsid);
+    metrics.putContext("library", String.join(",", resolvedLibraries));
+    metrics.putContext("engine", readsInJvm() ? ENGINE_DIRECT : copyEngine);
+    metrics.putContext("format", format);
+    metrics.putContext("output", local ? "local" : "ifs");
+    metrics.putContext("threads", String.valueOf(threads));
+    metrics.start();
+  }
+
+  private void report() throws IOException {
+    log.stopProgress(); // The report goes after every queued line
+    log.flush();
+    if (fanOut) return;
+
+    if (!reportFile.isEmpty()) {
+      Files.write(Paths.get(reportFile), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    if (jsonOutput) {
+      System.out.println(metrics.toJson());
+      return;
+    }
+
+    LatencyHistogram latency = metrics.getLatency();
     System.out.println("\nMigration completed.");
-    System.out.println("Total Source PFs migrated: " + totalSourcePFsMigrated);
-    System.out.println("Total members migrated: " + totalMembersMigrated);
-    System.out.println("Migration errors: " + migrationErrors);
-    long durationNanos = System.nanoTime() - startTime;
-    System.out.printf("Total time taken: %.2f seconds%n", TimeUnit.NANOSECONDS.toMillis(durationNanos) / 1000.0);
+    System.out.println("Total Source PFs migrated: " + metrics.getSourcePfsMigrated());
+    System.out.println("Total members migrated: " + metrics.getMembersMigrated());
+    if (incremental || changedOnly) {
+      System.out.println("Unchanged members skipped: " + metrics.getUnchangedMembers());
+    }
+    if (incremental) {
+      System.out.println("Members no longer in the library: " + metrics.getRemovedMembers());
+    }
+    if (resume) {
+      System.out.println("Members finished before the resume: " + metrics.getResumedMembers());
+    }
+    System.out.println("Migration errors: " + metrics.getMigrationErrors());
+    if (metrics.getRetries() > 0) {
+      System.out.println("Retries: " + metrics.getRetries());
+    }
+    System.out.println("Bytes written: " + metrics.getBytesWritten());
+    if (verbose) {
+      System.out.printf("Member latency ms: p50 %.1f | p95 %.1f | p99 %.1f | max %.1f%n", 
+          latency.getPercentile(50) / 1000.0, latency.getPercentile(95) / 1000.0, 
+          latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0);
+    }
+    System.out.printf("Members per second: %.1f%n", metrics.getMembersPerSecond());
+    System.out.printf("Total time taken: %.2f seconds%n", metrics.getElapsedSeconds());
+  }
+
+  public MigrationMetrics getMetrics(){
+    return metrics;
   }
 
+  /* Paths of the migrated members, in the order they finished. A copy: the run may still be adding to it. */
   public List<String> getPathList(){
     if (returnPaths){
-       return migratedPaths;
+       return new ArrayList<>(migratedPaths);
     }
     return Arrays.asList("");
   }
 
   public String getPathList(int index){
     if (returnPaths){
-       return migratedPaths.get(index);
+       return getPathList().get(index);
     }
     return "";
   }
 
+  /* Gets every member of the next runs as soon as it is finished. See MigrationListener */
+  public void addListener(MigrationListener listener){
+    if (listener == null) throw new IllegalArgumentException("Listener can not be null");
+    listeners.add(listener);
+  }
+
+  public void removeListener(MigrationListener listener){
+    listeners.remove(listener);
+  }
+
+  /* A member skipped before any copy. */
+  private void finished(SourceMember member, String outDir, MemberResult.Status status) {
+    if (listeners.isEmpty()) return;
+    finished(new MemberResult(member.getLibrary(), member.getSourcePf(), member.getMember(), member.getSourceType(), 
+        outDir + "/" + member.getLibrary() + "/" + member.getSourcePf() + "/" + member.getFileName(), status, 0, 0, null));
+  }
+
+  /* A failing listener is reported, it never stops the run nor the other listeners. */
+  private void finished(MemberResult result) {
+    if (returnPaths && result.getStatus() == MemberResult.Status.MIGRATED) {
+      migratedPaths.add(result.getPath());
+    }
+    for (MigrationListener listener : listeners) {
+      try {
+        listener.memberFinished(result);
+      } catch (RuntimeException e) {
+        log.error("Listener failed on " + result.getMember() + ": " + e, e);
+      }
+    }
+  }
+
   public String getFirstPath(){
     return getPathList(0);
   }
 
-  /* Main entry point of the migration process. */
+  /* Main entry point of the migration process. ifsOutputDir is the library dir: outDir/library */
   public void migrateMember(String querySources, String ifsOutputDir, String library) throws SQLException, IOException,
       AS400SecurityException, ErrorCompletingRequestException, InterruptedException, PropertyVetoException {
-    try (Statement stmt = connection.createStatement();
-        ResultSet rsQuerySources = stmt.executeQuery(querySources)) {
+    List<SourceMember> work = new ArrayList<>();
+    try (Statement stmt = connection.createStatement()) {
+      stmt.setFetchSize(pageSize);
+      try (ResultSet rsQuerySources = stmt.executeQuery(querySources)) {
+        while (rsQuerySources.next()) {
+          work.add(new SourceMember(
+              rsQuerySources.getString("Library").trim(),
+              rsQuerySources.getString("SourcePf").trim(),
+              rsQuerySources.getString("Member").trim(),
+              rsQuerySources.getString("SourceType").trim(),
+              rsQuerySources.getString("LastUpdate")));
+        }
+      }
+    }
+    migrateMembers(work, Paths.get(ifsOutputDir).getParent().toString(), new HashMap<String, MigrationManifest>());
+  }
 
-      List<CompletableFuture<Void>> futures = new ArrayList<>();
-      while (rsQuerySources.next()) {
-        String sourcePf = rsQuerySources.getString("SourcePf").trim();
-        String memberName = rsQuerySources.getString("Member").trim();
-        String sourceType = rsQuerySources.getString("SourceType").trim();
+  /*
+   * Migrates the work list to outDir/library/sourcePf, all libraries on the same worker pool.
+   * A library with a manifest gets it updated with every member copied and, in incremental mode, 
+   * members whose change timestamp matches it are skipped.
+   */
+  public void migrateMembers(List<SourceMember> work, String outDir, Map<String, MigrationManifest> manifests) 
+      throws IOException, InterruptedException {
+    Map<String, Set<String>> seen = new HashMap<>();
+    if (engine == null) startEngine(); // Called without api() by tests and benchmarks
+    ConcurrencyLimiter inFlight = newLimiter();
+    limiter = inFlight;
+    output = openOutput(work, outDir);
+
+    List<SourceMember> copies = new ArrayList<>();
+    for (SourceMember sourceMember : work) {
+      String library = sourceMember.getLibrary();
+      MigrationManifest manifest = manifests.get(library);
+      String key = MigrationManifest.key(sourceMember.getSourcePf(), sourceMember.getMember(), sourceMember.getSourceType());
+      if (incremental && manifest != null) {
+        seen.computeIfAbsent(library, lib -> new HashSet<>()).add(key);
+        if (manifest.isCurrent(key, sourceMember.getLastUpdate())) {
+          metrics.recordUnchanged();
+          finished(sourceMember, outDir, MemberResult.Status.UNCHANGED);
+          continue;
+        }
+      }
 
-        CompletableFuture<Void> future = migrateAsync(library, sourcePf, memberName, sourceType, ifsOutputDir + "/" + sourcePf);
-        futures.add(future);
+      if (resume && journal != null && journal.isDone(CheckpointJournal.key(library, sourceMember.getSourcePf(), 
+          sourceMember.getMember(), sourceMember.getSourceType()), sourceMember.getLastUpdate())) {
+        metrics.recordResumed();
+        finished(sourceMember, outDir, MemberResult.Status.RESUMED);
+        continue;
+      }
+      copies.add(sourceMember);
+    }
+
+    // The engine runs members in the order they are sent, so sending them largest first schedules them that way
+    copies.sort(LARGEST_FIRST);
+    long totalWork = 0;
+    for (SourceMember sourceMember : copies) totalWork += getWork(sourceMember);
+    LongAdder copied = new LongAdder();
+    LongAdder workDone = new LongAdder();
+    log.startProgress(copies.size(), copied::sum, totalWork, workDone::sum);
 
-        // TODO: Adjust this count
-        //totalSourcePFsMigrated++;
+    /* The limiter holds the producer back when enough members are queued, so memory stays flat. */
+    try {
+      for (SourceMember sourceMember : copies) {
+        String library = sourceMember.getLibrary();
+        MigrationManifest manifest = manifests.get(library);
+        String key = MigrationManifest.key(sourceMember.getSourcePf(), sourceMember.getMember(), sourceMember.getSourceType());
+        String journalKey = CheckpointJournal.key(library, sourceMember.getSourcePf(), sourceMember.getMember(), 
+            sourceMember.getSourceType());
+
+        inFlight.acquire();
+        CheckpointJournal checkpoints = journal;
+        migrateAsync(library, sourceMember.getSourcePf(), sourceMember.getMember(), sourceMember.getSourceType(), 
+            outDir + "/" + library + "/" + sourceMember.getSourcePf())
+          .whenComplete((migrated, error) -> {
+            if (error == null && migrated) {
+              if (manifest != null) manifest.put(key, sourceMember.getLastUpdate());
+              if (checkpoints != null) checkpoints.add(journalKey, sourceMember.getLastUpdate());
+            }
+            workDone.add(getWork(sourceMember));
+            copied.increment();
+            inFlight.release();
+          });
       }
+    } finally {
+      inFlight.awaitIdle(); // Wait for the members still copying
+      output.close(); // An archive is only complete once its writer finishes
+      output = null;
+      limiter = null;
+    }
+    if (inFlight.isAdaptive()) {
+      log.info("Members in flight: " + inFlight.getLimit() + " at the end, between " + inFlight.getLowestLimit() + 
+          " and " + inFlight.getHighestLimit() + " during the run");
+    }
 
-      CompletableFuture<Void> allFutures = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-      allFutures.join();
+    // A member list only covers part of the PF, nothing can be said about the rest
+    if (incremental && members.isEmpty()) {
+      for (Map.Entry<String, MigrationManifest> entry : manifests.entrySet()) {
+        Set<String> seenInLibrary = seen.getOrDefault(entry.getKey(), new HashSet<String>());
+        removeMissingMembers(entry.getValue(), seenInLibrary, outDir + "/" + entry.getKey());
+      }
     }
   }
 
-  private CompletableFuture<Void> migrateAsync(String library, String sourcePf, String memberName,
-      String sourceType, String ifsOutputDir) {
-    return CompletableFuture.runAsync(() -> {
+  /* What the progress and ETA count a member as: its size plus the fixed cost of any member. */
+  static long getWork(SourceMember member) {
+    return member.getDataSize() + MEMBER_OVERHEAD_BYTES;
+  }
+
+  private OutputSink openOutput(List<SourceMember> work, String outDir) throws IOException {
+    if (offlineOutput != null) return offlineOutput;
+    if (!FORMAT_DIR.equals(format)) return openArchive(work, outDir);
+    if (utilities.isDirectAccess()) {
+      // On the IBM i the dir is on the IFS: files written in the JVM need the 1208 tag CPYTOSTMF would give them
+      return new DirectorySink(Paths.get(outDir), Utilities.runsOnIbmI() && systems != null ? DirectorySink.onIfs(systems) : null);
+    }
+    return new IfsSink(systems, outDir); // Off the IBM i, the stream files are written through the host servers
+  }
+
+  /* The fast-import commit is dated with the newest member change, so the same sources give the same commit. */
+  private ArchiveSink openArchive(List<SourceMember> work, String outDir) throws IOException {
+    Path archivePath = ArchiveSink.getArchivePath(outDir, format);
+    ArchiveSink archive;
+    if (utilities.isDirectAccess()) {
+      archive = new ArchiveSink(archivePath, format);
+    } else {
+      try {
+        archive = new ArchiveSink(new IFSFileOutputStream(system, archivePath.toString(), IFSFileOutputStream.SHARE_NONE, false), 
+            archivePath.toString(), format);
+      } catch (AS400SecurityException e) {
+        throw new IOException("Not authorized to write " + archivePath, e);
+      }
+    }
+    if (!ArchiveSink.FORMAT_FAST_IMPORT.equals(format)) return archive;
+
+    long commitTime = System.currentTimeMillis();
+    String newest = work.stream().map(SourceMember::getLastUpdate).filter(Objects::nonNull).max(String::compareTo).orElse(null);
+    if (newest != null) {
       try {
-        //TODO: Should i use cmdStmt.execute instead of this?
-        String commandStr = "CPYTOSTMF FROMMBR('/QSYS.lib/" + library + ".lib/" + sourcePf + ".file/" + memberName
-            + ".mbr') " +
-            "TOSTMF('" + ifsOutputDir + "/" + memberName + "." + sourceType + "') " +
-            "STMFOPT(*REPLACE) STMFCCSID(" + UTF8_CCSID + ") ENDLINFMT(*LF)";
-
-        CommandCall cmd = new CommandCall(system);
-        if (!cmd.run(commandStr)) {
-          System.out.println("Could not migrate " + memberName + ": Failed");
-          migrationErrors++;
-        } else {
-          System.out.println("Migrated SourcePf: " + sourcePf + " | member: " + memberName + "." + sourceType + ": OK");
-          totalMembersMigrated++;
-          if (returnPaths){
-            migratedPaths.add(ifsOutputDir + "/" + memberName + "." + sourceType);
-          }
+        commitTime = Timestamp.valueOf(newest.trim()).getTime();
+      } catch (IllegalArgumentException e) {
+        // Not a timestamp the JDBC escape format knows, keep the run time
+      }
+    }
+
+    String user = getUserId();
+    String systemName;
+    try {
+      systemName = catalogSource.getSystemName();
+    } catch (SQLException e) {
+      systemName = system == null ? "offline" : system.getSystemName();
+    }
+    Set<String> libraries = new TreeSet<>();
+    for (SourceMember member : work) libraries.add(member.getLibrary());
+
+    archive.setCommit(user + " <" + user.toLowerCase() + "@" + systemName.toLowerCase() + ">", 
+        "Migrate " + String.join(", ", libraries) + " from " + systemName, commitTime);
+    return archive;
+  }
+
+  /* Reports members that are in the manifest but not in the library anymore. With --prune, deletes their stream files. */
+  private void removeMissingMembers(MigrationManifest manifest, Set<String> seen, String ifsOutputDir) throws IOException {
+    for (String key : manifest.getRemoved(seen, sourcePf)) {
+      metrics.recordRemoved();
+      if (!prune) {
+        log.info("Member no longer exists: " + key);
+        continue;
+      }
+      deleteStreamFile(ifsOutputDir + "/" + key);
+      manifest.remove(key);
+      log.info("Removed stream file of deleted member: " + key);
+    }
+  }
+
+  private CompletableFuture<Boolean> migrateAsync(String library, String sourcePf, String memberName,
+      String sourceType, String ifsOutputDir) {
+    return migrateAsync(library, sourcePf, memberName, sourceType, ifsOutputDir, 0, 0);
+  }
+
+  /* A failure that can pass is copied again after a backoff. The member keeps its in-flight slot meanwhile. */
+  private CompletableFuture<Boolean> migrateAsync(String library, String sourcePf, String memberName,
+      String sourceType, String ifsOutputDir, int attempt, long delayMillis) {
+    OutputSink sink = output;
+    ConcurrencyLimiter inFlight = limiter;
+    return engine.submitAfter(delayMillis, () -> copyMember(sink, library, sourcePf, memberName, sourceType, ifsOutputDir))
+      .thenCompose(copy -> {
+        CommandResult result = copy.result;
+        if (inFlight != null) inFlight.record(copy.latencyNanos, result.isRetryable());
+
+        if (result.isRetryable() && attempt < retries) {
+          long backoff = getBackoffMillis(attempt);
+          metrics.recordRetry();
+          log.detail("Retrying " + memberName + " in " + backoff + " ms: " + 
+              (result.getMessages().isEmpty() ? "Failed" : result.getMessages().get(0)));
+          return migrateAsync(library, sourcePf, memberName, sourceType, ifsOutputDir, attempt + 1, backoff);
+        }
+
+        if (!result.isSuccess()) {
+          log.error("Could not migrate " + library + "/" + sourcePf + "(" + memberName + "): " + 
+              (result.getMessages().isEmpty() ? "Failed" : result.getMessages().get(0)), result.getError());
+          metrics.recordError(library, sourcePf, copy.latencyNanos);
+          finished(new MemberResult(library, sourcePf, memberName, sourceType, copy.streamFile, MemberResult.Status.FAILED, 
+              copy.latencyNanos, 0, result.getMessageIds()));
+          return CompletableFuture.completedFuture(false);
         }
+        if (log.isEnabled(MigrationLog.Level.DETAIL)) {
+          log.detail("Migrated SourcePf: " + sourcePf + " | member: " + memberName + "." + sourceType + ": OK");
+        }
+        metrics.recordMigrated(library, sourcePf, copy.latencyNanos, copy.bytes);
+        finished(new MemberResult(library, sourcePf, memberName, sourceType, copy.streamFile, MemberResult.Status.MIGRATED, 
+            copy.latencyNanos, copy.bytes, result.getMessageIds()));
+        return CompletableFuture.completedFuture(true);
+      });
+  }
+
+  /* Outcome of one copy of a member. */
+  private static class MemberCopy {
+    final CommandResult result;
+    final String streamFile;
+    final long bytes;
+    final long latencyNanos;
+
+    MemberCopy(CommandResult result, String streamFile, long bytes, long latencyNanos) {
+      this.result = result;
+      this.streamFile = streamFile;
+      this.bytes = bytes;
+      this.latencyNanos = latencyNanos;
+    }
+  }
+
+  private MemberCopy copyMember(OutputSink sink, String library, String sourcePf, String memberName, String sourceType, 
+      String ifsOutputDir) {
+    String streamFile = ifsOutputDir + "/" + memberName + "." + sourceType;
+    long start = System.nanoTime();
+    long bytes = 0;
+    CommandResult result;
+
+    if (readsInJvm()) {
+      String entryName = library + "/" + sourcePf + "/" + memberName + "." + sourceType;
+      String description = "READ " + library + "/" + sourcePf + "(" + memberName + ") TO " + entryName;
+      try {
+        byte[] content = memberReader.read(library, sourcePf, memberName);
+        streamFile = sink.write(entryName, content);
+        bytes = content.length;
+        result = CommandResult.ok(description);
+      } catch (IOException e) {
+        result = CommandResult.failed(description, e);
+      }
+    } else {
+      //TODO: Should i use cmdStmt.execute instead of this?
+      String commandStr = "CPYTOSTMF FROMMBR('/QSYS.lib/" + library + ".lib/" + sourcePf + ".file/" + memberName
+          + ".mbr') " +
+          "TOSTMF('" + streamFile + "') " +
+          "STMFOPT(*REPLACE) STMFCCSID(" + UTF8_CCSID + ") ENDLINFMT(*LF)";
+      result = engine.run(commandStr);
+      if (result.isSuccess()) bytes = streamFileSize(streamFile);
+    }
+    return new MemberCopy(result, streamFile, bytes, System.nanoTime() - start);
+  }
+
+  /* Exponential with equal jitter: half of the delay is fixed, half random, so retries of a burst spread out. */
+  static long getBackoffMillis(int attempt) {
+    long delay = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(attempt, 20));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  /* CPYTOSTMF can only write stream files on the IFS of the same system. */
+  private boolean readsInJvm() {
+    return ENGINE_DIRECT.equals(copyEngine) || !FORMAT_DIR.equals(format) || local;
+  }
+
+  private String getUserId() {
+    return system == null ? "OFFLINE" : system.getUserId().trim().toUpperCase();
+  }
+
+  private void startEngine(){
+    if (offlineCommands != null) {
+      memberReader = offlineReader;
+      engine = new MigrationEngine(threads, offlineCommands);
+      return;
+    }
 
-      } catch (AS400SecurityException | ErrorCompletingRequestException | IOException | InterruptedException
-          | PropertyVetoException e) {
+    systems = new SystemPool(system, threads);
+    memberReader = new RecordMemberReader(systems);
 
-        System.out.println("Could not migrate " + memberName + ": Failed");
-        migrationErrors++;
-        e.printStackTrace();
+    CommandExecutor commands;
+    if (batchSize > 1) {
+      // A batch holds at most a command per thread, its own connection keeps it off the catalog queries
+      try {
+        commands = new BatchCommandExecutor(new AS400JDBCDataSource(system).getConnection(), Math.min(batchSize, threads));
+      } catch (SQLException e) {
+        systems.close();
+        systems = null;
+        throw new IllegalStateException("Could not open the connection of the command batches: " + e.getMessage(), e);
       }
+    } else {
+      commands = new PooledCommandExecutor(systems); // One host server job per thread
+    }
+    engine = new MigrationEngine(threads, commands);
+  }
 
-    });
+  /* Size of the stream file the server just wrote. Off the IBM i, asked to the file host server. 0 if it can not be read. */
+  private long streamFileSize(String streamFile) {
+    if (utilities.isDirectAccess()) {
+      try {
+        return Files.size(Paths.get(streamFile));
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+
+    AS400 pooled = null;
+    try {
+      pooled = systems.borrow();
+      return new IFSFile(pooled, streamFile).length(); // 0 if it does not exist
+    } catch (IOException e) {
+      return 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 0;
+    } finally {
+      if (pooled != null) systems.release(pooled);
+    }
+  }
+
+  /* Deletes an output stream file where it was written: here, or on the IFS through the file host server. */
+  private void deleteStreamFile(String streamFile) throws IOException {
+    if (utilities.isDirectAccess()) {
+      Files.deleteIfExists(Paths.get(streamFile));
+      return;
+    }
+
+    AS400 pooled;
+    try {
+      pooled = systems.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a system to delete " + streamFile, e);
+    }
+    try {
+      IFSFile file = new IFSFile(pooled, streamFile);
+      if (file.exists() && !file.delete()) throw new IOException("Could not delete " + streamFile);
+    } finally {
+      systems.release(pooled);
+    }
+  }
+
+  /* Stops the engine threads and drains the system pool. The next run builds a new one. */
+  public void closeEngine() {
+    if (memberReader != null) {
+      memberReader.close();
+      memberReader = null;
+    }
+    if (engine != null) {
+      engine.close();
+      engine = null;
+    }
+    if (systems != null) {
+      systems.close();
+      systems = null;
+    }
+  }
+
+  /* Closes the engine, the statements and the connection of the system. */
+  @Override
+  public void close() {
+    cleanup();
   }
 
   private void cleanup() {
+    closeEngine();
+    log.close();
+    if (statements != null) {
+      statements.close();
+      statements = null;
+    }
     try {
       if (connection != null && !connection.isClosed()) {
         connection.close();
@@ -519,6 +1566,11 @@ public class SourceMigrator implements Runnable{
   }
 
   public static void main(String... args) {
+    if (MultiSystemMigrator.isFanOut(args)) {
+      MultiSystemMigrator.main(args);
+      return;
+    }
+
     AS400 system = null;
     SourceMigrator migrator = null;
 
@@ -0,0 +1,39 @@
+package com.github.kraudy.migrator;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/*
+ * Catalog of a live system: one SYSPARTITIONSTAT query on the cached statements of the run.
+ */
+public class SqlCatalogSource implements CatalogSource {
+  private final StatementCache statements;
+  private final Utilities utilities;
+  private final int fetchSize;
+
+  public SqlCatalogSource(StatementCache statements, Utilities utilities, int fetchSize) {
+    this.statements = statements;
+    this.utilities = utilities;
+    this.fetchSize = fetchSize;
+  }
+
+  @Override
+  public SourceCatalog load(List<String> libraryNames) throws SQLException {
+    return SourceCatalog.load(statements, libraryNames, fetchSize);
+  }
+
+  @Override
+  public String probe(List<String> libraryNames) throws SQLException {
+    return SourceCatalog.probe(statements, libraryNames);
+  }
+
+  @Override
+  public String getSystemName() throws SQLException {
+    return utilities.getSystemName();
+  }
+
+  @Override
+  public String getCcsid() throws SQLException {
+    return utilities.getCcsid();
+  }
+}
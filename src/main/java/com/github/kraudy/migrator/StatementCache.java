@@ -0,0 +1,68 @@
+package com.github.kraudy.migrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Prepared statements kept open for the life of the run, keyed by their SQL text.
+ * The server parses each statement once, later calls only bind new values.
+ * Close the ResultSet of a statement before asking for the same SQL again.
+ */
+public class StatementCache implements AutoCloseable {
+  /* Values bound per IN list. Longer lists are sent in chunks of this size. */
+  public static final int IN_LIST_SIZE = 100;
+
+  private final Connection connection;
+  private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+  public StatementCache(Connection connection) {
+    this.connection = connection;
+  }
+
+  public synchronized PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement stmt = statements.get(sql);
+    if (stmt == null || stmt.isClosed()) {
+      stmt = connection.prepareStatement(sql);
+      statements.put(sql, stmt);
+    }
+    stmt.clearParameters();
+    return stmt;
+  }
+
+  /* "?, ?, ?" for an IN list of the given size. */
+  public static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  /* 
+   * Splits the values in chunks of IN_LIST_SIZE. The last chunk is padded with its last value,
+   * so every chunk binds to the same statement text and reuses the same prepared statement.
+   */
+  public static List<List<String>> chunks(List<String> values) {
+    List<List<String>> chunks = new ArrayList<>();
+    for (int start = 0; start < values.size(); start += IN_LIST_SIZE) {
+      List<String> chunk = new ArrayList<>(values.subList(start, Math.min(start + IN_LIST_SIZE, values.size())));
+      while (chunk.size() < IN_LIST_SIZE) chunk.add(chunk.get(chunk.size() - 1));
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  @Override
+  public synchronized void close() {
+    for (PreparedStatement stmt : statements.values()) {
+      try {
+        stmt.close();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
+    statements.clear();
+  }
+}
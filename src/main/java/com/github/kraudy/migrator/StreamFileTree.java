@@ -0,0 +1,133 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Stream files of a directory laid out like the forward migration output: library/sourcePf/member.type
+ * Names are upper cased, so a checkout with lower case names maps to the same members.
+ */
+public class StreamFileTree {
+  private static final int MAX_NAME_LENGTH = 10; // Library, file and member names
+
+  /* One stream file and the member it goes to. */
+  public static class StreamFile {
+    private final Path path;
+    private final SourceMember member;
+
+    public StreamFile(Path path, SourceMember member) {
+      this.path = path;
+      this.member = member;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public SourceMember getMember() {
+      return member;
+    }
+  }
+
+  private final List<StreamFile> files = new ArrayList<>();
+  private final List<Path> skipped = new ArrayList<>();
+
+  /* 
+   * Scans root/library/sourcePf/member.type for the given libraries. Other dirs of the root are ignored.
+   * Empty sourcePf means every source PF, empty members every member, like SourceCatalog.select
+   */
+  public static StreamFileTree scan(Path root, Collection<String> libraries, String sourcePf, Collection<String> members) 
+      throws IOException {
+    StreamFileTree tree = new StreamFileTree();
+    Set<String> seen = new HashSet<>();
+
+    for (Path libraryDir : listDirectories(root)) {
+      String library = libraryDir.getFileName().toString().toUpperCase();
+      if (!libraries.contains(library)) continue;
+
+      for (Path sourcePfDir : listDirectories(libraryDir)) {
+        String pf = sourcePfDir.getFileName().toString().toUpperCase();
+        if (!sourcePf.isEmpty() && !sourcePf.equals(pf)) continue;
+        if (pf.length() > MAX_NAME_LENGTH) {
+          tree.skipped.add(sourcePfDir);
+          continue;
+        }
+
+        for (Path file : list(sourcePfDir, Files::isRegularFile)) {
+          String fileName = file.getFileName().toString();
+          if (fileName.startsWith(".")) continue; // Manifest and other tool files
+
+          int dot = fileName.indexOf('.');
+          if (dot < 1 || dot > MAX_NAME_LENGTH || dot == fileName.length() - 1) {
+            tree.skipped.add(file);
+            continue;
+          }
+          String member = fileName.substring(0, dot).toUpperCase();
+          String sourceType = fileName.substring(dot + 1).toUpperCase();
+          if (!members.isEmpty() && !members.contains(member)) continue;
+          if (!seen.add(library + "/" + pf + "/" + member)) {
+            tree.skipped.add(file); // Same member name with another type, one member can only hold one of them
+            continue;
+          }
+          tree.files.add(new StreamFile(file, new SourceMember(library, pf, member, sourceType, null)));
+        }
+      }
+    }
+    return tree;
+  }
+
+  private static List<Path> listDirectories(Path dir) throws IOException {
+    return list(dir, child -> Files.isDirectory(child) && !child.getFileName().toString().startsWith(".")); // .git and the like
+  }
+
+  /* Sorted, so the same tree always gives the same work list. */
+  private static List<Path> list(Path dir, DirectoryStream.Filter<Path> filter) throws IOException {
+    List<Path> children = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, filter)) {
+      for (Path child : stream) children.add(child);
+    }
+    children.sort(null);
+    return children;
+  }
+
+  public List<StreamFile> getFiles() {
+    return files;
+  }
+
+  /* Files and dirs whose names can not be a member or source PF. */
+  public List<Path> getSkipped() {
+    return skipped;
+  }
+
+  /* Source PFs of the tree the catalog does not have, as LIBRARY/SOURCEPF */
+  public Set<String> getMissingSourcePfs(SourceCatalog catalog) {
+    Set<String> missing = new TreeSet<>();
+    for (StreamFile file : files) {
+      SourceMember member = file.getMember();
+      if (!catalog.hasSourcePf(member.getLibrary(), member.getSourcePf())) {
+        missing.add(member.getLibrary() + "/" + member.getSourcePf());
+      }
+    }
+    return missing;
+  }
+
+  /* Members of the tree the catalog does not have. */
+  public List<SourceMember> getMissingMembers(SourceCatalog catalog) {
+    List<SourceMember> missing = new ArrayList<>();
+    for (StreamFile file : files) {
+      SourceMember member = file.getMember();
+      if (catalog.getMember(member.getLibrary(), member.getSourcePf(), member.getMember()) == null) {
+        missing.add(member);
+      }
+    }
+    return missing;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.kraudy.migrator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.ibm.as400.access.AS400;
+
+/*
+ * Pool of AS400 objects used for concurrent host server work.
+ * Every pooled object is a copy of the signed-on system, so each one gets its own
+ * host server job instead of queuing behind a single command server connection.
+ */
+public class SystemPool implements AutoCloseable {
+  private static final AS400 CLOSED = new AS400(); // Put in the idle queue by close to wake the waiters, never connected
+  private final AS400 system;
+  private final int maxSystems;
+  private final BlockingQueue<AS400> idle = new LinkedBlockingQueue<>();
+  private final List<AS400> created = new ArrayList<>();
+  private boolean closed = false;
+
+  public SystemPool(AS400 system, int maxSystems) {
+    if (system == null) throw new IllegalArgumentException("System can not be null");
+    if (maxSystems < 1) throw new IllegalArgumentException("Pool size must be greater than zero");
+
+    this.system = system;
+    this.maxSystems = maxSystems;
+  }
+
+  public int getMaxSystems() {
+    return maxSystems;
+  }
+
+  /* 
+   * Returns an idle system, creates a new one while under the limit or waits for one to be released.
+   * Throws IllegalStateException once the pool is closed, also to the threads that were waiting.
+   */
+  public AS400 borrow() throws InterruptedException {
+    AS400 pooled = idle.poll();
+    if (pooled == null) {
+      synchronized (this) {
+        if (closed) throw new IllegalStateException("System pool is closed");
+        if (created.size() < maxSystems) {
+          pooled = new AS400(system); // Copy keeps the sign-on info but opens its own connections
+          created.add(pooled);
+          return pooled;
+        }
+      }
+      pooled = idle.take();
+    }
+
+    if (pooled == CLOSED) {
+      idle.offer(CLOSED); // Left for the next waiter
+      throw new IllegalStateException("System pool is closed");
+    }
+    return pooled;
+  }
+
+  public void release(AS400 pooled) {
+    if (pooled == null) return;
+    synchronized (this) {
+      if (closed) {
+        pooled.disconnectAllServices();
+        return;
+      }
+    }
+    idle.offer(pooled);
+  }
+
+  /* Drains the pool, ending every host server job it started. */
+  @Override
+  public synchronized void close() {
+    if (closed) return;
+    closed = true;
+    idle.clear();
+    idle.offer(CLOSED);
+    for (AS400 pooled : created) {
+      pooled.disconnectAllServices();
+    }
+    created.clear();
+  }
+}
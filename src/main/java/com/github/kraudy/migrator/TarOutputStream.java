@@ -0,0 +1,73 @@
+package com.github.kraudy.migrator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Minimal ustar writer: regular files only, names up to 100 bytes. Enough for library/sourcePf/member.type
+ * The JDK has zip but no tar, and the migrator keeps its dependencies to jt400 and picocli.
+ */
+public class TarOutputStream extends FilterOutputStream {
+  private static final int BLOCK = 512;
+  private static final int NAME_LENGTH = 100;
+
+  public TarOutputStream(OutputStream out) {
+    super(out);
+  }
+
+  /* Header, content and padding to the next block of one regular file. */
+  public void putEntry(String name, byte[] content, long modifiedMillis) throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > NAME_LENGTH) throw new IOException("Tar entry name longer than " + NAME_LENGTH + " bytes: " + name);
+
+    byte[] header = new byte[BLOCK];
+    System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+    octal(header, 100, 8, 0644);                     // mode
+    octal(header, 108, 8, 0);                        // uid
+    octal(header, 116, 8, 0);                        // gid
+    octal(header, 124, 12, content.length);          // size
+    octal(header, 136, 12, modifiedMillis / 1000);   // mtime
+    header[156] = '0';                               // regular file
+    ascii(header, 257, "ustar\0");                   // magic
+    ascii(header, 263, "00");                        // version
+
+    // Checksum is computed with its own field filled with blanks
+    for (int i = 148; i < 156; i++) header[i] = ' ';
+    long checksum = 0;
+    for (byte b : header) checksum += b & 0xFF;
+    octal(header, 148, 7, checksum);
+    header[155] = ' ';
+
+    out.write(header);
+    out.write(content);
+    int padding = (BLOCK - content.length % BLOCK) % BLOCK;
+    if (padding > 0) out.write(new byte[padding]);
+  }
+
+  /* Two empty blocks mark the end of the archive. */
+  public void finish() throws IOException {
+    out.write(new byte[BLOCK * 2]);
+    out.flush();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+  }
+
+  /* Zero padded octal ending in NUL, as the ustar numeric fields are. */
+  private static void octal(byte[] header, int offset, int length, long value) {
+    String digits = Long.toOctalString(value);
+    int width = length - 1;
+    while (digits.length() < width) digits = "0" + digits;
+    ascii(header, offset, digits);
+    header[offset + width] = 0;
+  }
+
+  private static void ascii(byte[] header, int offset, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+}
@@ -1,33 +1,81 @@
 package com.github.kraudy.migrator;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.ibm.as400.access.IFSFile;
 import com.ibm.as400.access.User;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 public class Utilities {
-  private final Connection connection;
+  private final StatementCache statements;
   private final boolean verbose;
   private final User currentUser;
+  private SourceCatalog catalog; // When set, validations are answered from it instead of SYSPARTITIONSTAT
+  private boolean localOutput = false; // Output on the file system of this JVM instead of the IFS
+  private MigrationLog log = new MigrationLog();
 
   public Utilities(Connection connection, User currentUser, boolean verbose) {
-    this.connection = connection;
+    this(new StatementCache(connection), currentUser, verbose);
+  }
+
+  /* Statements are shared with the caller, who closes them at the end of the run. */
+  public Utilities(StatementCache statements, User currentUser, boolean verbose) {
+    this.statements = statements;
     this.currentUser = currentUser;
     this.verbose = verbose;
   }
 
+  /* On IBM i java.io reaches the IFS itself. Anywhere else the IFS is reached through the host servers. */
+  public static boolean runsOnIbmI() {
+    return "OS/400".equalsIgnoreCase(System.getProperty("os.name"));
+  }
+
+  /* Lines of the run go to the log of the migrator that owns these utilities. */
+  public void setLog(MigrationLog log) {
+    this.log = log;
+  }
+
+  public void setLocalOutput(boolean localOutput) {
+    this.localOutput = localOutput;
+  }
+
+  public boolean isLocalOutput() {
+    return localOutput;
+  }
+
+  /* True if output paths are plain java.io paths of this JVM: local output, or running on the IBM i. */
+  public boolean isDirectAccess() {
+    return localOutput || runsOnIbmI();
+  }
+
+  public void setCatalog(SourceCatalog catalog) {
+    this.catalog = catalog;
+  }
+
+  public SourceCatalog getCatalog() {
+    return catalog;
+  }
+
+  private boolean inCatalog(String library) {
+    return catalog != null && catalog.hasLibrary(library);
+  }
+
   public String getSystemName() throws SQLException {
-    try (Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT CURRENT_SERVER AS Server FROM SYSIBM. SYSDUMMY1")) {
+    PreparedStatement stmt = statements.prepare("SELECT CURRENT_SERVER AS Server FROM SYSIBM. SYSDUMMY1");
+    try (ResultSet rs = stmt.executeQuery()) {
       if (rs.next()) {
         return rs.getString("Server").trim();
       }
@@ -36,10 +84,10 @@ public class Utilities {
   }
 
   public String getCcsid() throws SQLException {
-    try (Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(
-            "Select CCSID From QSYS2. SYSCOLUMNS WHERE TABLE_NAME = 'SYSPARTITIONSTAT'" +
-                "And TABLE_SCHEMA = 'QSYS2' And COLUMN_NAME = 'SYSTEM_TABLE_NAME' ")) {
+    PreparedStatement stmt = statements.prepare(
+        "Select CCSID From QSYS2. SYSCOLUMNS WHERE TABLE_NAME = 'SYSPARTITIONSTAT'" +
+            "And TABLE_SCHEMA = 'QSYS2' And COLUMN_NAME = 'SYSTEM_TABLE_NAME' ");
+    try (ResultSet rs = stmt.executeQuery()) {
       if (rs.next()) {
         return rs.getString("CCSID").trim();
       }
@@ -47,6 +95,12 @@ public class Utilities {
     return "";
   }
 
+  /* Output dir of the member migration. Local output is relative to the working dir, like any local tool. */
+  public String getOutputPath(String outDir) throws IOException {
+    if (localOutput) return Paths.get(outDir).toAbsolutePath().normalize().toString();
+    return getIFSPath(outDir);
+  }
+
   //TODO: Maybe this should return the FILE object
   public String getIFSPath(String outDir) throws IOException {
     if (outDir.startsWith("/")) {
@@ -56,7 +110,7 @@ public class Utilities {
     String homeDir = currentUser.getHomeDirectory(); // Needed for relative path
     if (homeDir == null || homeDir.isEmpty()) {
       homeDir = "/tmp"; // Fallback
-      if (verbose) System.err.println(" *The current user has no home directory. Default to '/tmp'");
+      log.detail(" *The current user has no home directory. Default to '/tmp'");
       //TODO: Add param for this, like something to make it crash, maybe -x? or some default params
       //throw new IllegalArgumentException("The current user has no home directory.");
     }
@@ -65,31 +119,51 @@ public class Utilities {
   }
 
   //TODO: Change to validateIFSPath and create another for createDirectory
-  public boolean validateIFSPath(String path){
-    File sourceFile = new File(path);
-    return sourceFile.exists();
+  public boolean validateIFSPath(String path) throws IOException{
+    if (runsOnIbmI()) {
+      File sourceFile = new File(path);
+      return sourceFile.exists();
+    }
+    return new IFSFile(currentUser.getSystem(), path).exists();
   }
 
-  public void createDirectory(String dirPath) {
-    //TODO: Change to jt400 IFSFile
+  public void createDirectory(String dirPath) throws IOException {
+    if (!isDirectAccess()) {
+      IFSFile outputDir = new IFSFile(currentUser.getSystem(), dirPath);
+      if (outputDir.exists()) {
+        log.detail(" *Dir already exists: " + dirPath + " ...");
+        return;
+      }
+      log.detail("Creating IFS dir: " + dirPath + " ...");
+      outputDir.mkdirs();
+      return;
+    }
+
     File outputDir = new File(dirPath);
     if (outputDir.exists()) {
-      if (verbose) System.err.println(" *Dir already exists: " + dirPath + " ...");
+      log.detail(" *Dir already exists: " + dirPath + " ...");
       return;
     }
-    if (verbose) System.out.println("Creating dir: " + dirPath + " ...");
+    log.detail("Creating dir: " + dirPath + " ...");
     outputDir.mkdirs();
   }
 
-  public void createDirectory(String dirPath, String library) throws SQLException {
-    try (Statement stmt = connection.createStatement();
-        ResultSet sourcePFs = stmt.executeQuery(
-          "SELECT CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf " +
-          "FROM QSYS2. SYSPARTITIONSTAT " +
-          "WHERE SYSTEM_TABLE_SCHEMA = '" + library + "' " +
-          "AND TRIM(SOURCE_TYPE) <> '' " +
-          "GROUP BY SYSTEM_TABLE_NAME, SYSTEM_TABLE_SCHEMA"
-        )) {
+  public void createDirectory(String dirPath, String library) throws SQLException, IOException {
+    if (inCatalog(library)) {
+      for (String sourcePf : catalog.getSourcePfs(library)) {
+        createDirectory(dirPath, library, sourcePf);
+      }
+      return;
+    }
+
+    PreparedStatement stmt = statements.prepare(
+        "SELECT CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf " +
+        "FROM QSYS2. SYSPARTITIONSTAT " +
+        "WHERE SYSTEM_TABLE_SCHEMA = ? " +
+        "AND TRIM(SOURCE_TYPE) <> '' " +
+        "GROUP BY SYSTEM_TABLE_NAME, SYSTEM_TABLE_SCHEMA");
+    stmt.setString(1, library);
+    try (ResultSet sourcePFs = stmt.executeQuery()) {
       while (sourcePFs.next()) {
         String sourcePf = sourcePFs.getString("SourcePf").trim();
 
@@ -100,18 +174,27 @@ public class Utilities {
     
   }
 
-  public void createDirectory(String dirPath, String library, String sourcePf) {
+  public void createDirectory(String dirPath, String library, String sourcePf) throws IOException {
     createDirectory(dirPath + "/" + library + "/" + sourcePf);
   }
 
-  //TODO: Add timestamp validation.
+  /** @deprecated The run builds its work list from {@link SourceCatalog}. Kept for callers of migrateMember(String, ...) */
+  @Deprecated
   public String getMigrationQuery(String library, String sourcePf, List<String> members) throws SQLException {
-    return "SELECT CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf, " +
+    return getMigrationQuery(Arrays.asList(library), sourcePf, members);
+  }
+
+  /** @deprecated The run builds its work list from {@link SourceCatalog}. Kept for callers of migrateMember(String, ...) */
+  @Deprecated
+  public String getMigrationQuery(List<String> libraries, String sourcePf, List<String> members) throws SQLException {
+    return "SELECT CAST(SYSTEM_TABLE_SCHEMA AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Library, " +
+                  "CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf, " +
                   "CAST(SYSTEM_TABLE_MEMBER AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Member, " + 
-                  "CAST(SOURCE_TYPE AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourceType " +
+                  "CAST(SOURCE_TYPE AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourceType, " +
+                  "COALESCE(LAST_SOURCE_UPDATE_TIMESTAMP, LAST_CHANGE_TIMESTAMP) AS LastUpdate " +
         "FROM QSYS2. SYSPARTITIONSTAT " +
         "WHERE TRIM(SOURCE_TYPE) <> '' " + //TODO: Is this source_type validation right?
-        "AND SYSTEM_TABLE_SCHEMA = '" + library + "' " +
+        "AND SYSTEM_TABLE_SCHEMA IN (" + libraries.stream().map(l -> "'" + l + "'").collect(Collectors.joining(", ")) + ") " +
         (sourcePf.isEmpty()? "" : "AND SYSTEM_TABLE_NAME = '" + sourcePf + "' ") +
         (members.isEmpty()? "" : "AND SYSTEM_TABLE_MEMBER IN (" + members.stream().map(m -> "'" + m + "'").collect(Collectors.joining(", ")) + ") ");
   }
@@ -120,33 +203,54 @@ public class Utilities {
     if (sourcePf.equals("")) throw new IllegalArgumentException("Source PF is empty");
 
     // Validate if Source PF exists
-    try (Statement validateStmt = connection.createStatement();
-        ResultSet validateRs = validateStmt.executeQuery(
-            "SELECT 1 AS Exist FROM QSYS2. SYSPARTITIONSTAT " +
-                "WHERE SYSTEM_TABLE_SCHEMA = '" + library + "' " +
-                "AND SYSTEM_TABLE_NAME = '" + sourcePf + "' " +
-                "AND TRIM(SOURCE_TYPE) <> '' LIMIT 1")) {
-      if (!validateRs.next()) {
-        if (verbose) {
-          System.err.println(" *Source PF " + sourcePf + " does not exist in library " + library);
-          showSourcePFs(library); //Show available source PF in library
-        }
-        throw new IllegalArgumentException("Source PF " + sourcePf + " does not exist in library " + library);
+    if (!existsSourcePf(sourcePf, library)) {
+      if (verbose) {
+        log.detail(" *Source PF " + sourcePf + " does not exist in library " + library);
+        showSourcePFs(library); //Show available source PF in library
       }
+      throw new IllegalArgumentException("Source PF " + sourcePf + " does not exist in library " + library);
+    }
+  }
+
+  public boolean existsSourcePf(String sourcePf, String library) throws SQLException{
+    if (inCatalog(library)) return catalog.hasSourcePf(library, sourcePf);
 
+    PreparedStatement validateStmt = statements.prepare(
+        "SELECT 1 AS Exist FROM QSYS2. SYSPARTITIONSTAT " +
+            "WHERE SYSTEM_TABLE_SCHEMA = ? " +
+            "AND SYSTEM_TABLE_NAME = ? " +
+            "AND TRIM(SOURCE_TYPE) <> '' LIMIT 1");
+    validateStmt.setString(1, library);
+    validateStmt.setString(2, sourcePf);
+    try (ResultSet validateRs = validateStmt.executeQuery()) {
+      return validateRs.next();
     }
   }
 
   public void showSourcePFs(String library) throws SQLException {
     int total = 0;
-    try (Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(
-            "SELECT CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf, " +
-                "COUNT(*) AS Members " +
-                "FROM QSYS2. SYSPARTITIONSTAT " +
-                "WHERE SYSTEM_TABLE_SCHEMA = '" + library + "' " +
-                "AND TRIM(SOURCE_TYPE) <> '' " +
-                "GROUP BY SYSTEM_TABLE_NAME")) {
+    if (inCatalog(library)) {
+      System.out.println("\nList of available Source PFs in library: " + library);
+      System.out.println("    SourcePf      | Number of Members");
+      System.out.println("    ------------- | -----------------");
+      for (String sourcePf : catalog.getSourcePfs(library)) {
+        int membersCount = catalog.getMemberCount(library, sourcePf);
+        total += membersCount;
+        System.out.printf("    %-13s | %17s%n", sourcePf, membersCount);
+      }
+      System.out.println(String.format("   Total: %27s%n", total));
+      return;
+    }
+
+    PreparedStatement stmt = statements.prepare(
+        "SELECT CAST(SYSTEM_TABLE_NAME AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS SourcePf, " +
+            "COUNT(*) AS Members " +
+            "FROM QSYS2. SYSPARTITIONSTAT " +
+            "WHERE SYSTEM_TABLE_SCHEMA = ? " +
+            "AND TRIM(SOURCE_TYPE) <> '' " +
+            "GROUP BY SYSTEM_TABLE_NAME");
+    stmt.setString(1, library);
+    try (ResultSet rs = stmt.executeQuery()) {
       System.out.println("\nList of available Source PFs in library: " + library);
       System.out.println("    SourcePf      | Number of Members");
       System.out.println("    ------------- | -----------------");
@@ -164,54 +268,114 @@ public class Utilities {
   public void validateMembers(String library, String sourcePf, List<String> members) throws SQLException {
     if (members.isEmpty()) throw new IllegalArgumentException("Member's list is empty");
 
-    String inClause = members.stream().map(m -> "'" + m + "'").collect(Collectors.joining(", "));
-    try (Statement stmt = connection.createStatement();
-         ResultSet rs = stmt.executeQuery(
-             "SELECT CAST(SYSTEM_TABLE_MEMBER AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Member " +
-             "FROM QSYS2.SYSPARTITIONSTAT " +
-             "WHERE SYSTEM_TABLE_SCHEMA = '" + library + "' " +
-             "AND SYSTEM_TABLE_NAME = '" + sourcePf + "' " +
-             "AND SYSTEM_TABLE_MEMBER IN (" + inClause + ") " +
-             "AND TRIM(SOURCE_TYPE) <> '' ")) { //TODO: Add source type as param?
-        Set<String> found = new HashSet<>();
+    if (inCatalog(library)) {
+      List<String> missing = members.stream().map(m -> m.trim().toUpperCase())
+          .filter(m -> catalog.getMember(library, sourcePf, m) == null).collect(Collectors.toList());
+      if (!missing.isEmpty()) {
+        log.detail("Missing members in PF " + sourcePf + ": " + missing);
+        throw new IllegalArgumentException("Some members do not exist in PF " + sourcePf + " in library " + library + ": " + missing);
+      }
+      return;
+    }
+
+    // Long member lists go in fixed size chunks: one statement text, parsed once
+    PreparedStatement stmt = statements.prepare(
+        "SELECT CAST(SYSTEM_TABLE_MEMBER AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Member " +
+        "FROM QSYS2.SYSPARTITIONSTAT " +
+        "WHERE SYSTEM_TABLE_SCHEMA = ? " +
+        "AND SYSTEM_TABLE_NAME = ? " +
+        "AND SYSTEM_TABLE_MEMBER IN (" + StatementCache.placeholders(StatementCache.IN_LIST_SIZE) + ") " +
+        "AND TRIM(SOURCE_TYPE) <> '' "); //TODO: Add source type as param?
+    List<String> wanted = members.stream().map(m -> m.trim().toUpperCase()).collect(Collectors.toList());
+    Set<String> found = new HashSet<>();
+    for (List<String> chunk : StatementCache.chunks(wanted)) {
+      stmt.setString(1, library);
+      stmt.setString(2, sourcePf);
+      for (int i = 0; i < chunk.size(); i++) {
+        stmt.setString(i + 3, chunk.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
         while (rs.next()) {
             found.add(rs.getString("Member").trim().toUpperCase());
         }
-        List<String> missing = members.stream().map(m -> m.trim().toUpperCase()).filter(m -> !found.contains(m)).collect(Collectors.toList());
-        if (!missing.isEmpty()) {
-            if (verbose) System.err.println("Missing members in PF " + sourcePf + ": " + missing);
-            
-            throw new IllegalArgumentException("Some members do not exist in PF " + sourcePf + " in library " + library + ": " + missing);
-        }
+      }
+    }
+    List<String> missing = wanted.stream().filter(m -> !found.contains(m)).collect(Collectors.toList());
+    if (!missing.isEmpty()) {
+        log.detail("Missing members in PF " + sourcePf + ": " + missing);
+        
+        throw new IllegalArgumentException("Some members do not exist in PF " + sourcePf + " in library " + library + ": " + missing);
     }
   }
   
+  /* Expands generic names (APP*) into the libraries that have source PFs. Other names are validated as they are. */
+  public List<String> resolveLibraries(List<String> libraries) throws SQLException {
+    if (libraries.isEmpty()) throw new IllegalArgumentException("Library list is empty");
+
+    Set<String> resolved = new LinkedHashSet<>();
+    for (String library : libraries) {
+      if (!library.contains("*")) {
+        if (!inCatalog(library)) validateLibrary(library); // Could exist with no source PFs yet
+        resolved.add(library);
+        continue;
+      }
+
+      if (catalog != null && catalog.isLoadedFor(libraries)) {
+        List<String> matching = catalog.matchLibraries(library);
+        if (matching.isEmpty()) throw new IllegalArgumentException("No library with source PFs matches " + library);
+        resolved.addAll(matching);
+        continue;
+      }
+
+      String pattern = library.replace("_", "\\_").replace("*", "%");
+      int before = resolved.size();
+      PreparedStatement stmt = statements.prepare(
+          "SELECT DISTINCT CAST(SYSTEM_TABLE_SCHEMA AS VARCHAR(10) CCSID " + SourceMigrator.INVARIANT_CCSID + ") AS Library " +
+              "FROM QSYS2. SYSPARTITIONSTAT " +
+              "WHERE SYSTEM_TABLE_SCHEMA LIKE ? ESCAPE '\\' " +
+              "AND TRIM(SOURCE_TYPE) <> '' " +
+              "ORDER BY Library");
+      stmt.setString(1, pattern);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          resolved.add(rs.getString("Library").trim());
+        }
+      }
+      if (resolved.size() == before) {
+        throw new IllegalArgumentException("No library with source PFs matches " + library);
+      }
+      log.detail("Libraries matching " + library + ": " + (resolved.size() - before));
+    }
+    return new ArrayList<>(resolved);
+  }
+
   // TODO: Add params validation to this class
   public void validateLibrary(String library) throws SQLException {
     if ("QTEMP".equals(library.toUpperCase())) return; // QTEMP is valid
 
-    try (Statement validateStmt = connection.createStatement();
-        ResultSet validateRs = validateStmt.executeQuery(
-            "SELECT 1 AS Exists " +
-                "FROM QSYS2. SYSPARTITIONSTAT " +
-                "WHERE SYSTEM_TABLE_SCHEMA = '" + library + "' LIMIT 1")) {
+    PreparedStatement validateStmt = statements.prepare(
+        "SELECT 1 AS Exists " +
+            "FROM QSYS2. SYSPARTITIONSTAT " +
+            "WHERE SYSTEM_TABLE_SCHEMA = ? LIMIT 1");
+    validateStmt.setString(1, library);
+    try (ResultSet validateRs = validateStmt.executeQuery()) {
       if (!validateRs.next()) {
         //TODO: Change err ouptut to something usefule
         if (verbose) {
-          System.err.println(" *Library " + library + " does not exist in your system.");
+          log.detail(" *Library " + library + " does not exist in your system.");
           // Show similar libs
-          try (Statement relatedStmt = connection.createStatement();
-              ResultSet relatedRs = relatedStmt.executeQuery(
-                  "SELECT SYSTEM_TABLE_SCHEMA AS library " +
-                      "FROM QSYS2. SYSPARTITIONSTAT " +
-                      "WHERE SYSTEM_TABLE_SCHEMA LIKE '%" + library + "%' " +
-                      "GROUP BY SYSTEM_TABLE_SCHEMA LIMIT 10")) {
-            if (relatedRs.next()) {
-              System.err.println("Did you mean: ");
-              do {
-                System.err.println(relatedRs.getString("library").trim());
-              } while (relatedRs.next());
+          PreparedStatement relatedStmt = statements.prepare(
+              "SELECT SYSTEM_TABLE_SCHEMA AS library " +
+                  "FROM QSYS2. SYSPARTITIONSTAT " +
+                  "WHERE SYSTEM_TABLE_SCHEMA LIKE ? " +
+                  "GROUP BY SYSTEM_TABLE_SCHEMA LIMIT 10");
+          relatedStmt.setString(1, "%" + library + "%");
+          try (ResultSet relatedRs = relatedStmt.executeQuery()) {
+            List<String> related = new ArrayList<>();
+            while (relatedRs.next()) {
+              related.add(relatedRs.getString("library").trim());
             }
+            if (!related.isEmpty()) log.detail("Did you mean: " + String.join(", ", related));
           }
         }
         throw new IllegalArgumentException("Library " + library + " does not exist in your system.");
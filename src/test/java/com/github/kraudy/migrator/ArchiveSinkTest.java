@@ -0,0 +1,110 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class ArchiveSinkTest {
+  private static final int MEMBERS = 500;
+
+  private static byte[] content(int i) {
+    StringBuilder source = new StringBuilder();
+    for (int line = 0; line <= i % 40; line++) source.append("dsply 'member ").append(i).append(" line ").append(line).append("';\n");
+    return source.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /* Many threads write at once, like the migration threads do. */
+  private Path writeArchive(Path dir, String format) throws IOException {
+    Path archive = ArchiveSink.getArchivePath(dir.resolve("sources").toString(), format);
+    try (ArchiveSink sink = new ArchiveSink(archive, format); MigrationEngine engine = new MigrationEngine(8, cmd -> CommandResult.ok(cmd))) {
+      List<CompletableFuture<String>> writes = new ArrayList<>();
+      for (int i = 0; i < MEMBERS; i++) {
+        int member = i;
+        writes.add(engine.submit(() -> {
+          try {
+            return sink.write("APPA/QRPGLESRC/MBR" + member + ".RPGLE", content(member));
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }));
+      }
+      CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+    }
+    return archive;
+  }
+
+  private void assertAllMembers(Map<String, byte[]> entries) {
+    assertEquals(MEMBERS, entries.size());
+    for (int i = 0; i < MEMBERS; i++) {
+      assertArrayEquals(content(i), entries.get("APPA/QRPGLESRC/MBR" + i + ".RPGLE"));
+    }
+  }
+
+  @Test
+  void zipHoldsEveryMember(@TempDir Path dir) throws Exception {
+    Path archive = writeArchive(dir, ArchiveSink.FORMAT_ZIP);
+    assertEquals("sources.zip", archive.getFileName().toString());
+
+    Map<String, byte[]> entries = new TreeMap<>();
+    try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) entries.put(entry.getName(), readAll(zip));
+    }
+    assertAllMembers(entries);
+  }
+
+  @Test
+  void tarGzHoldsEveryMember(@TempDir Path dir) throws Exception {
+    Path archive = writeArchive(dir, ArchiveSink.FORMAT_TAR_GZ);
+
+    Map<String, byte[]> entries = new TreeMap<>();
+    try (DataInputStream tar = new DataInputStream(new GZIPInputStream(Files.newInputStream(archive)))) {
+      byte[] header = new byte[512];
+      while (true) {
+        tar.readFully(header);
+        if (header[0] == 0) break; // End of archive
+        assertEquals("ustar", new String(header, 257, 5, StandardCharsets.US_ASCII));
+        assertEquals(checksum(header), Long.parseLong(new String(header, 148, 6, StandardCharsets.US_ASCII), 8));
+
+        String name = new String(header, 0, 100, StandardCharsets.UTF_8).trim();
+        int size = Integer.parseInt(new String(header, 124, 11, StandardCharsets.US_ASCII), 8);
+        byte[] content = new byte[size];
+        tar.readFully(content);
+        tar.readFully(new byte[(512 - size % 512) % 512]);
+        entries.put(name.replace("\0", ""), content);
+      }
+    }
+    assertAllMembers(entries);
+  }
+
+  private static long checksum(byte[] header) {
+    long sum = 0;
+    for (int i = 0; i < header.length; i++) sum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+    return sum;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+}
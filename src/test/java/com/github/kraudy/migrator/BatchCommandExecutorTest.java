@@ -0,0 +1,157 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchCommandExecutorTest {
+
+  /*
+   * JDBC stub for the batch query over the QCMDEXC scalar function and CALL QSYS2.QCMDEXC(?).
+   * Commands containing BAD fail: -1 in the batch, BAD:<id> with that message id when called.
+   */
+  static class QcmdexcStub {
+    final AtomicInteger batches = new AtomicInteger(); // Batch queries, one round trip each
+    final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+    static String messageId(String command) {
+      int id = command.indexOf("BAD:");
+      return id < 0 ? "CPFA0A9" : command.substring(id + 4);
+    }
+
+    Connection connection() {
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement")) return statement((String) args[0]);
+            return null;
+          });
+    }
+
+    PreparedStatement statement(String sql) {
+      Map<Integer, String> parameters = new TreeMap<>();
+      return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "setString":
+                parameters.put((Integer) args[0], (String) args[1]);
+                return null;
+              case "execute":
+                String command = parameters.get(1);
+                if (command.contains("BAD")) throw new SQLException("[" + messageId(command) + "] Failed.");
+                executed.add(command);
+                return false;
+              case "executeQuery":
+                assertEquals(BatchCommandExecutor.getBatchQuery(parameters.size()), sql);
+                batches.incrementAndGet();
+                List<int[]> rows = new ArrayList<>();
+                for (Map.Entry<Integer, String> parameter : parameters.entrySet()) {
+                  boolean ok = !parameter.getValue().contains("BAD");
+                  if (ok) executed.add(parameter.getValue());
+                  rows.add(new int[] { parameter.getKey(), ok ? 1 : -1 });
+                }
+                parameters.clear();
+                return results(rows);
+              default:
+                return null;
+            }
+          });
+    }
+
+    ResultSet results(List<int[]> rows) {
+      int[] row = { -1 };
+      return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "next":
+                return ++row[0] < rows.size();
+              case "getInt":
+                return rows.get(row[0])[(Integer) args[0] - 1];
+              default:
+                return null;
+            }
+          });
+    }
+  }
+
+  @Test
+  void failuresAreReportedPerCommand() {
+    QcmdexcStub stub = new QcmdexcStub();
+    BatchCommandExecutor commands = new BatchCommandExecutor(stub.connection(), 4);
+
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+    try (MigrationEngine engine = new MigrationEngine(8, commands)) {
+      for (int i = 0; i < 8; i++) {
+        results.add(engine.submit(i == 2 ? "CPYTOSTMF BAD" + i : "CPYTOSTMF MBR" + i));
+      }
+      CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+    }
+
+    for (int i = 0; i < 8; i++) {
+      CommandResult result = results.get(i).join();
+      if (i == 2) {
+        assertFalse(result.isSuccess());
+        assertEquals("CPFA0A9", result.getMessageIds().get(0));
+      } else {
+        assertTrue(result.isSuccess(), result.getCommand());
+      }
+    }
+    assertEquals(7, stub.executed.size());
+  }
+
+  @Test
+  void everyFailedCommandGetsItsOwnMessage() {
+    QcmdexcStub stub = new QcmdexcStub();
+    try (BatchCommandExecutor commands = new BatchCommandExecutor(stub.connection(), 4)) {
+      List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+      try (MigrationEngine engine = new MigrationEngine(4, commands)) {
+        results.add(engine.submit("CPYTOSTMF MBR0"));
+        results.add(engine.submit("CPYTOSTMF BAD:CPFA0A9"));
+        results.add(engine.submit("CPYTOSTMF BAD:CPF5715"));
+        results.add(engine.submit("CPYTOSTMF MBR3"));
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+      }
+
+      assertTrue(results.get(0).join().isSuccess());
+      assertEquals("CPFA0A9", results.get(1).join().getMessageIds().get(0));
+      assertEquals("CPF5715", results.get(2).join().getMessageIds().get(0));
+      assertTrue(results.get(3).join().isSuccess());
+    }
+  }
+
+  @Test
+  void aFullBatchIsOneQuery() {
+    QcmdexcStub stub = new QcmdexcStub();
+    try (BatchCommandExecutor commands = new BatchCommandExecutor(stub.connection(), 4)) {
+      List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+      try (MigrationEngine engine = new MigrationEngine(4, commands)) {
+        for (int i = 0; i < 16; i++) results.add(engine.submit("CPYTOSTMF MBR" + i));
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+      }
+    }
+    assertEquals(16, stub.executed.size());
+    assertTrue(stub.batches.get() < 16, "Batches sent: " + stub.batches.get());
+  }
+
+  @Test
+  void partialBatchIsSentAfterLinger() {
+    QcmdexcStub stub = new QcmdexcStub();
+    try (BatchCommandExecutor commands = new BatchCommandExecutor(stub.connection(), 100)) {
+      assertTrue(commands.run("CRTSRCPF FILE(QGPL/QRPGLESRC)").isSuccess());
+    }
+    assertEquals(1, stub.batches.get());
+  }
+}
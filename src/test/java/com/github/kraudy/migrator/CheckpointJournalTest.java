@@ -0,0 +1,72 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+public class CheckpointJournalTest {
+
+  @Test
+  void resumedJournalSkipsCutLinesAndChangedMembers(@TempDir Path outDir) throws Exception {
+    try (CheckpointJournal journal = CheckpointJournal.create(outDir)) {
+      journal.add(CheckpointJournal.key("APP", "QRPGLESRC", "HELLO", "RPGLE"), "2026-01-01 10:00:00.000000");
+      journal.add(CheckpointJournal.key("APP", "QCLSRC", "START", "CLLE"), null);
+    }
+    // A crash in the middle of a batch
+    Files.write(outDir.resolve(CheckpointJournal.FILE_NAME), "APP/QRPGLESRC/BYE.RPG".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    try (CheckpointJournal journal = CheckpointJournal.resume(outDir)) {
+      assertEquals(2, journal.size());
+      assertTrue(journal.isDone("APP/QRPGLESRC/HELLO.RPGLE", "2026-01-01 10:00:00.000000"));
+      assertFalse(journal.isDone("APP/QRPGLESRC/HELLO.RPGLE", "2026-02-01 10:00:00.000000"));
+      assertTrue(journal.isDone("APP/QCLSRC/START.CLLE", null));
+      journal.add(CheckpointJournal.key("APP", "QRPGLESRC", "BYE", "RPGLE"), "");
+    }
+
+    try (CheckpointJournal journal = CheckpointJournal.resume(outDir)) {
+      assertEquals(3, journal.size());
+    }
+    try (CheckpointJournal journal = CheckpointJournal.create(outDir)) {
+      assertEquals(0, journal.size()); // A run without --resume starts over
+    }
+  }
+
+  @Test
+  void resumeOnlyCopiesWhatTheLastRunDidNotFinish(@TempDir Path outDir) throws Exception {
+    SimulatedSystem system = new SimulatedSystem(4)
+        .addLibrary("SIMLIB", 2, 100, 5)
+        .setErrorRate(0.1, "CPF3141"); // Not retried
+
+    MigrationMetrics first = migrate(system, outDir);
+    long failed = first.getMigrationErrors();
+    assertTrue(failed > 0);
+
+    system.setErrorRate(0, "CPF3141");
+    MigrationMetrics second = migrate(system, outDir);
+    assertEquals(200 - failed, second.getResumedMembers());
+    assertEquals(failed, second.getMembersMigrated());
+    assertEquals(200 + failed, system.getReads());
+  }
+
+  private static MigrationMetrics migrate(SimulatedSystem system, Path outDir) {
+    SourceMigrator migrator = new SourceMigrator(system, system, system);
+    migrator.setThreads(4);
+    migrator.setResume(true);
+    migrator.setMigrationParams("SIMLIB", "", Collections.<String>emptyList(), outDir.toString());
+    try {
+      migrator.api();
+    } finally {
+      migrator.closeEngine();
+    }
+    return migrator.getMetrics();
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD limits driven with made up latencies, one window of calls at a time.
+ */
+public class ConcurrencyLimiterTest {
+  private static final long FLAT = TimeUnit.MILLISECONDS.toNanos(2);
+
+  /* Sends a full window of calls that all take the given latency. */
+  private static void window(ConcurrencyLimiter limiter, long latencyNanos, boolean overloaded) throws InterruptedException {
+    int calls = limiter.getLimit();
+    for (int i = 0; i < calls; i++) limiter.acquire();
+    for (int i = 0; i < calls; i++) {
+      limiter.record(latencyNanos, overloaded);
+      limiter.release();
+    }
+  }
+
+  @Test
+  void growsWhileLatencyStaysFlat() throws Exception {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.adaptive(1, 16);
+    for (int i = 0; i < 60; i++) window(limiter, FLAT, false);
+    assertEquals(16, limiter.getLimit());
+    assertEquals(1, limiter.getLowestLimit());
+  }
+
+  @Test
+  void backsOffOncePerWindowWhenLatencyClimbsOrCallsFail() throws Exception {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.adaptive(1, 16);
+    for (int i = 0; i < 60; i++) window(limiter, FLAT, false);
+
+    window(limiter, FLAT * 10, false); // Host is queueing: one cut for the whole window
+    int afterLatency = limiter.getLimit();
+    assertEquals((int) (16 * ConcurrencyLimiter.BACKOFF_RATIO), afterLatency);
+
+    window(limiter, FLAT, true); // A window later, failures cut again
+    assertTrue(limiter.getLimit() < afterLatency);
+  }
+
+  @Test
+  void fixedLimitIgnoresTheHost() throws Exception {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(4);
+    for (int i = 0; i < 5; i++) window(limiter, FLAT, true);
+    assertEquals(4, limiter.getLimit());
+    assertFalse(limiter.isAdaptive());
+  }
+}
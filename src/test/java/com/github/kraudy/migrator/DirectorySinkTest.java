@@ -0,0 +1,31 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DirectorySinkTest {
+
+  @Test
+  void everyStreamFileIsTaggedUtf8(@TempDir Path outDir) throws Exception {
+    List<String> tags = new ArrayList<>();
+    byte[] content = "       dsply 'Hola señor';\n".getBytes(StandardCharsets.UTF_8);
+
+    try (DirectorySink sink = new DirectorySink(outDir, (streamFile, ccsid) -> tags.add(streamFile + " " + ccsid))) {
+      String first = sink.write("APP/QRPGLESRC/HELLO.RPGLE", content); // Creates the source PF dir
+      String second = sink.write("APP/QRPGLESRC/HELLO.RPGLE", content); // Replaces it, tagged again
+
+      assertEquals(first, second);
+      assertEquals(Arrays.asList(first + " 1208", first + " 1208"), tags);
+      assertArrayEquals(content, Files.readAllBytes(outDir.resolve("APP/QRPGLESRC/HELLO.RPGLE")));
+    }
+  }
+}
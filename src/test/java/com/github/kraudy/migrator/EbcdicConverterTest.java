@@ -0,0 +1,101 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.ibm.as400.access.AS400Text;
+import com.ibm.as400.access.AS400ZonedDecimal;
+import com.ibm.as400.access.CharConverter;
+import com.ibm.as400.access.CharacterFieldDescription;
+import com.ibm.as400.access.Record;
+import com.ibm.as400.access.RecordFormat;
+import com.ibm.as400.access.ZonedDecimalFieldDescription;
+
+public class EbcdicConverterTest {
+  private static final int[] CCSIDS = { 37, 273, 277, 278, 280, 284, 285, 297, 500, 871,
+      1140, 1141, 1142, 1143, 1144, 1145, 1146, 1147, 1148, 1149 };
+
+  @Test
+  void everyByteRoundTripsAndMatchesJt400() throws Exception {
+    byte[] all = new byte[256];
+    for (int i = 0; i < 256; i++) all[i] = (byte) i;
+
+    for (int ccsid : CCSIDS) {
+      EbcdicConverter converter = EbcdicConverter.forCcsid(ccsid);
+      byte[] utf8 = new byte[EbcdicConverter.maxUtf8Length(all.length)];
+      int length = converter.toUtf8(all, 0, all.length, utf8, 0);
+      String expected = new CharConverter(ccsid).byteArrayToString(all, 0, all.length);
+      assertEquals(expected, new String(utf8, 0, length, StandardCharsets.UTF_8), "CCSID " + ccsid);
+
+      byte[] back = new byte[length];
+      assertEquals(256, converter.fromUtf8(utf8, 0, length, back, 0), "CCSID " + ccsid);
+      assertArrayEquals(all, Arrays.copyOf(back, 256), "CCSID " + ccsid);
+    }
+  }
+
+  @Test
+  void recordsAreFramedLikeTheJt400Path() throws Exception {
+    RecordFormat format = new RecordFormat("QRPGLESRC");
+    format.addFieldDescription(new ZonedDecimalFieldDescription(new AS400ZonedDecimal(6, 2), "SRCSEQ"));
+    format.addFieldDescription(new ZonedDecimalFieldDescription(new AS400ZonedDecimal(6, 0), "SRCDAT"));
+    CharacterFieldDescription sourceData = new CharacterFieldDescription(new AS400Text(80, 1141), "SRCDTA");
+    sourceData.setCCSID("1141");
+    format.addFieldDescription(sourceData);
+
+    EbcdicConverter converter = RecordMemberReader.getConverter(format.getFieldDescription("SRCDTA"));
+    assertEquals(1141, converter.getCcsid());
+
+    String[] lines = { "**free", "dcl-s größe packed(7:2) inz(12,50); // Preis in €", "", "   dsply 'Ünïcödé ß';" };
+    ByteArrayOutputStream viaJt400 = new ByteArrayOutputStream();
+    ByteArrayOutputStream viaTables = new ByteArrayOutputStream();
+    byte[] line = new byte[EbcdicConverter.maxUtf8Length(80) + 1];
+    byte[] block = new byte[lines.length * 92];
+    for (int i = 0; i < lines.length; i++) {
+      Record record = format.getNewRecord();
+      record.setField("SRCSEQ", new BigDecimal(i + 1));
+      record.setField("SRCDAT", new BigDecimal(260101));
+      record.setField("SRCDTA", lines[i]);
+      byte[] contents = record.getContents();
+      System.arraycopy(contents, 0, block, i * 92, 92);
+
+      RecordMemberReader.appendLine(viaJt400, String.format("%-80s", lines[i]));
+      byte[] data = new Record(format, contents).getFieldAsBytes("SRCDTA");
+      viaTables.write(line, 0, converter.toUtf8Line(data, 0, data.length, line, 0));
+    }
+    assertArrayEquals(viaJt400.toByteArray(), viaTables.toByteArray());
+
+    byte[] lines8 = new byte[EbcdicConverter.maxUtf8Length(block.length) + lines.length];
+    int length = converter.toUtf8Lines(block, 0, block.length, 92, 12, lines8, 0);
+    assertArrayEquals(viaJt400.toByteArray(), Arrays.copyOf(lines8, length));
+  }
+
+  @Test
+  void linesBecomePaddedRecordsAndUnknownCharsBecomeSub() {
+    EbcdicConverter converter = EbcdicConverter.forCcsid(37);
+    byte[] record = new byte[10];
+
+    byte[] line = "ab€中\r\n".getBytes(StandardCharsets.UTF_8); // 37 has no euro, 1140 does
+    assertEquals(4, converter.toRecord(line, 0, line.length, record, 0, 10));
+    assertArrayEquals(new byte[] { (byte) 0x81, (byte) 0x82, EbcdicConverter.SUB, EbcdicConverter.SUB, 
+        0x40, 0x40, 0x40, 0x40, 0x40, 0x40 }, record);
+    byte[] euro = new byte[1];
+    EbcdicConverter.forCcsid(1140).fromUtf8("€".getBytes(StandardCharsets.UTF_8), 0, 3, euro, 0);
+    assertEquals((byte) 0x9F, euro[0]);
+
+    byte[] malformed = { 'a', (byte) 0xC3, 'b', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80 };
+    byte[] out = new byte[malformed.length];
+    assertEquals(4, converter.fromUtf8(malformed, 0, malformed.length, out, 0));
+    assertArrayEquals(new byte[] { (byte) 0x81, EbcdicConverter.SUB, (byte) 0x82, EbcdicConverter.SUB }, Arrays.copyOf(out, 4));
+
+    byte[] tooLong = "12345678901".getBytes(StandardCharsets.UTF_8);
+    assertEquals(-1, converter.toRecord(tooLong, 0, tooLong.length, record, 0, 10));
+    assertTrue(record[9] == (byte) 0xF0); // The part that fits
+  }
+}
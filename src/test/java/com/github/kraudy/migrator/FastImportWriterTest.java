@@ -0,0 +1,30 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class FastImportWriterTest {
+
+  @Test
+  void blobsThenOneCommitWithEveryPath() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FastImportWriter git = new FastImportWriter(out);
+    git.blob("APPA/QRPGLESRC/HELLO.RPGLE", "**free\n".getBytes(StandardCharsets.UTF_8));
+    git.blob("APPA/QCLSRC/START.CLLE", "PGM\n".getBytes(StandardCharsets.UTF_8));
+    git.commit(ArchiveSink.GIT_REF, "DEV <dev@pub400>", 1704103200000L, "Migrate APPA");
+
+    String expected =
+        "blob\nmark :1\ndata 7\n**free\n\n" +
+        "blob\nmark :2\ndata 4\nPGM\n\n" +
+        "commit refs/heads/main\nmark :3\n" +
+        "author DEV <dev@pub400> 1704103200 +0000\n" +
+        "committer DEV <dev@pub400> 1704103200 +0000\n" +
+        "data 12\nMigrate APPA\n" +
+        "M 100644 :1 APPA/QRPGLESRC/HELLO.RPGLE\n" +
+        "M 100644 :2 APPA/QCLSRC/START.CLLE\n\n";
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,120 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remote client mode against a stand-in for the host servers: members are read in the JVM and written to a local dir.
+ */
+public class LocalMigrationTest {
+  private static final int THREADS = 4;
+
+  /* Answers like the record level reader after a host server round trip. Members named BAD* do not exist. */
+  static class StubMemberReader implements MemberReader {
+    final AtomicInteger reading = new AtomicInteger();
+    final AtomicInteger maxReading = new AtomicInteger();
+
+    static byte[] content(String library, String sourcePf, String member) {
+      return ("**free\ndsply '" + library + "/" + sourcePf + "/" + member + "';\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] read(String library, String sourcePf, String member) throws IOException {
+      maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(5);
+        if (member.startsWith("BAD")) throw new IOException("CPF3141 Member " + member + " not found");
+        return content(library, sourcePf, member);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        reading.decrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  void membersAreFetchedInParallelAndWrittenLocally(@TempDir Path outDir) throws Exception {
+    List<SourceMember> work = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      work.add(new SourceMember(i % 2 == 0 ? "APPA" : "APPB", "QRPGLESRC", "MBR" + i, "RPGLE", null));
+    }
+    work.add(new SourceMember("APPA", "QCLSRC", "BAD1", "CLLE", null));
+
+    StubMemberReader reader = new StubMemberReader();
+    SourceMigrator migrator = new SourceMigrator(null, cmd -> CommandResult.failed(cmd, "CPF0001", "No commands offline"), reader);
+    migrator.setThreads(THREADS);
+    Queue<MemberResult> results = new ConcurrentLinkedQueue<>();
+    migrator.addListener(results::add);
+    try {
+      migrator.migrateMembers(work, outDir.toString(), new HashMap<String, MigrationManifest>());
+    } finally {
+      migrator.closeEngine();
+    }
+
+    for (int i = 0; i < 40; i++) {
+      String library = i % 2 == 0 ? "APPA" : "APPB";
+      Path streamFile = outDir.resolve(library + "/QRPGLESRC/MBR" + i + ".RPGLE");
+      assertArrayEquals(StubMemberReader.content(library, "QRPGLESRC", "MBR" + i), Files.readAllBytes(streamFile));
+    }
+    assertFalse(Files.exists(outDir.resolve("APPA/QCLSRC/BAD1.CLLE")));
+
+    assertEquals(40, migrator.getMetrics().getMembersMigrated());
+    assertEquals(1, migrator.getMetrics().getMigrationErrors());
+    assertTrue(reader.maxReading.get() > 1 && reader.maxReading.get() <= THREADS);
+
+    assertEquals(41, results.size()); // Every member, each one as it finished
+    for (MemberResult result : results) {
+      if (result.getMember().equals("BAD1")) {
+        assertEquals(MemberResult.Status.FAILED, result.getStatus());
+        assertEquals("CPF3141", result.getMessageIds().get(0));
+      } else {
+        assertEquals(MemberResult.Status.MIGRATED, result.getStatus());
+        assertEquals(outDir.resolve(result.getLibrary() + "/QRPGLESRC/" + result.getMember() + ".RPGLE").toString(), result.getPath());
+        assertEquals(StubMemberReader.content(result.getLibrary(), "QRPGLESRC", result.getMember()).length, result.getBytes());
+      }
+    }
+  }
+
+  @Test
+  void largestMembersAreCopiedFirst(@TempDir Path outDir) throws Exception {
+    List<SourceMember> work = new ArrayList<>();
+    long[] sizes = { 800, 0, 120000, 3000, 120000, 50 }; // 0: size unknown
+    for (int i = 0; i < sizes.length; i++) {
+      work.add(new SourceMember("APPA", "QRPGLESRC", "MBR" + i, "RPGLE", null, i, sizes[i]));
+    }
+
+    Queue<String> reads = new ConcurrentLinkedQueue<>();
+    MemberReader reader = (library, sourcePf, member) -> {
+      reads.add(member);
+      return StubMemberReader.content(library, sourcePf, member);
+    };
+    SourceMigrator migrator = new SourceMigrator(null, cmd -> CommandResult.failed(cmd, "CPF0001", "No commands offline"), reader);
+    migrator.setThreads(1);
+    migrator.setMaxInFlight(1); // One at a time, in the order they were sent
+    try {
+      migrator.migrateMembers(work, outDir.toString(), new HashMap<String, MigrationManifest>());
+    } finally {
+      migrator.closeEngine();
+    }
+
+    // Same size: the one with more rows first
+    assertEquals(Arrays.asList("MBR4", "MBR2", "MBR3", "MBR0", "MBR5", "MBR1"), new ArrayList<>(reads));
+  }
+}
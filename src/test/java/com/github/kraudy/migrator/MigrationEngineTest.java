@@ -0,0 +1,55 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engine concurrency against a stubbed command layer. The comparison with the common pool is EnginePoolBenchmark.
+ */
+public class MigrationEngineTest {
+  private static final int MEMBERS = 64;
+  private static final int THREADS = 16;
+  private static final long COMMAND_MILLIS = 10;
+
+  /* Command layer stub: sleeps like a host server round trip and tracks how many run at once. */
+  static class SleepingCommandExecutor implements CommandExecutor {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger commands = new AtomicInteger();
+
+    @Override
+    public CommandResult run(String commandStr) {
+      int now = running.incrementAndGet();
+      maxRunning.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep(COMMAND_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+      }
+      commands.incrementAndGet();
+      return CommandResult.ok(commandStr);
+    }
+  }
+
+  @Test
+  void engineRunsAsManyCommandsAsThreads() {
+    SleepingCommandExecutor commands = new SleepingCommandExecutor();
+    try (MigrationEngine engine = new MigrationEngine(THREADS, commands)) {
+      List<CompletableFuture<CommandResult>> futures = new ArrayList<>();
+      for (int i = 0; i < MEMBERS; i++) {
+        futures.add(engine.submit("CPYTOSTMF MBR" + i));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    assertEquals(MEMBERS, commands.commands.get());
+    assertEquals(THREADS, commands.maxRunning.get());
+  }
+}
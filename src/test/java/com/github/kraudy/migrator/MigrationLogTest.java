@@ -0,0 +1,54 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class MigrationLogTest {
+
+  @Test
+  void fileGetsMemberLinesTheConsoleLeavesOut(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("logs/run.log");
+    try (MigrationLog log = new MigrationLog()) {
+      log.setLevel(false, false);
+      log.openFile(file);
+      assertTrue(log.isEnabled(MigrationLog.Level.DETAIL)); // Only because of the file
+      assertFalse(log.isEnabled(MigrationLog.Level.DEBUG));
+
+      log.info("User: TEST");
+      log.detail("Migrated SourcePf: QRPGLESRC | member: HELLO.RPGLE: OK");
+      log.debug("Command: CPYTOSTMF");
+      log.error("Could not migrate APP/QCLSRC(START): CPF3141", new IllegalStateException("not shown"));
+    }
+
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    assertEquals(3, lines.size());
+    assertTrue(lines.get(0).endsWith("INFO   User: TEST"));
+    assertTrue(lines.get(1).contains("DETAIL Migrated SourcePf"));
+    assertTrue(lines.get(2).contains("ERROR  Could not migrate"));
+  }
+
+  @Test
+  void progressShowsRateAndEta() {
+    MigrationLog log = new MigrationLog();
+    log.startProgress(200, () -> 50);
+    String text = log.progressText();
+    log.stopProgress();
+
+    assertTrue(text.startsWith("50/200 members (25%) | "), text);
+    assertTrue(text.contains("ETA "), text);
+    log.startProgress(200, () -> 50, 1000, () -> 900); // The big members are done
+    assertTrue(log.progressText().startsWith("50/200 members (90%) | "), log.progressText());
+    log.stopProgress();
+
+    assertEquals("01:05", MigrationLog.formatDuration(65));
+    assertEquals("2:00:05", MigrationLog.formatDuration(7205));
+  }
+}
@@ -0,0 +1,38 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class MigrationManifestTest {
+
+  @Test
+  void savedEntriesSurviveReload(@TempDir Path dir) throws Exception {
+    MigrationManifest manifest = MigrationManifest.load(dir.toString());
+    manifest.put(MigrationManifest.key("QRPGLESRC", "HELLO", "RPGLE"), "2024-01-01 10:00:00.000000");
+    manifest.save();
+
+    MigrationManifest reloaded = MigrationManifest.load(dir.toString());
+    assertTrue(reloaded.isCurrent("QRPGLESRC/HELLO.RPGLE", "2024-01-01 10:00:00.000000"));
+    assertFalse(reloaded.isCurrent("QRPGLESRC/HELLO.RPGLE", "2024-01-02 10:00:00.000000"));
+    assertFalse(reloaded.isCurrent("QRPGLESRC/OTHER.RPGLE", "2024-01-01 10:00:00.000000"));
+  }
+
+  @Test
+  void removedEntriesAreScopedToSourcePf(@TempDir Path dir) throws Exception {
+    MigrationManifest manifest = MigrationManifest.load(dir.toString());
+    manifest.put("QRPGLESRC/A.RPGLE", "1");
+    manifest.put("QRPGLESRC/B.RPGLE", "1");
+    manifest.put("QCLSRC/C.CLLE", "1");
+
+    HashSet<String> seen = new HashSet<>(Arrays.asList("QRPGLESRC/A.RPGLE"));
+    assertEquals(Arrays.asList("QRPGLESRC/B.RPGLE"), manifest.getRemoved(seen, "QRPGLESRC"));
+    assertEquals(2, manifest.getRemoved(seen, "").size());
+  }
+}
@@ -0,0 +1,63 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MigrationMetricsTest {
+
+  @Test
+  void percentilesStayWithinBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 10_000; micros++) {
+      histogram.record(micros);
+    }
+
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(1, histogram.getMin());
+    assertEquals(10_000, histogram.getMax());
+    assertWithin(5_000, histogram.getPercentile(50));
+    assertWithin(9_500, histogram.getPercentile(95));
+    assertWithin(9_900, histogram.getPercentile(99));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual >= expected && actual <= expected * 1.125, expected + " vs " + actual);
+  }
+
+  @Test
+  void concurrentUpdatesAreNotLost() {
+    MigrationMetrics metrics = new MigrationMetrics();
+    CompletableFuture<?>[] writers = new CompletableFuture<?>[8];
+    for (int i = 0; i < writers.length; i++) {
+      String sourcePf = i % 2 == 0 ? "QRPGLESRC" : "QCLSRC";
+      writers[i] = CompletableFuture.runAsync(() -> {
+        for (int m = 0; m < 10_000; m++) {
+          metrics.recordMigrated("MYLIB", sourcePf, TimeUnit.MILLISECONDS.toNanos(2), 100);
+        }
+      });
+    }
+    CompletableFuture.allOf(writers).join();
+
+    assertEquals(80_000, metrics.getMembersMigrated());
+    assertEquals(8_000_000, metrics.getBytesWritten());
+    assertEquals(2, metrics.getSourcePfsMigrated());
+  }
+
+  @Test
+  void jsonReportHasTotalsAndSourcePfs() {
+    MigrationMetrics metrics = new MigrationMetrics();
+    metrics.putContext("library", "MY\"LIB");
+    metrics.recordMigrated("MYLIB", "QRPGLESRC", TimeUnit.MILLISECONDS.toNanos(3), 42);
+    metrics.recordError("MYLIB", "QRPGLESRC", TimeUnit.MILLISECONDS.toNanos(1));
+    metrics.stop();
+
+    String json = metrics.toJson();
+    assertTrue(json.startsWith("{\"library\":\"MY\\\"LIB\","), json);
+    assertTrue(json.contains("\"membersMigrated\":1,\"migrationErrors\":1"), json);
+    assertTrue(json.contains("{\"sourcePf\":\"MYLIB/QRPGLESRC\",\"members\":1,\"errors\":1,\"bytes\":42}"), json);
+  }
+}
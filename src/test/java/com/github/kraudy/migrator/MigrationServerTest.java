@@ -0,0 +1,138 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server with sessions on a simulated system, called through the client like a build tool would.
+ */
+public class MigrationServerTest {
+
+  @Test
+  void concurrentClientsShareSessionsAndOneCatalog(@TempDir Path dir) throws Exception {
+    SimulatedSystem system = new SimulatedSystem(4).addLibrary("SIMLIB", 3, 20, 5);
+    AtomicInteger catalogLoads = new AtomicInteger();
+    CatalogSource counted = new CatalogSource() {
+      @Override
+      public SourceCatalog load(List<String> libraryNames) {
+        catalogLoads.incrementAndGet();
+        return system.load(libraryNames);
+      }
+
+      @Override
+      public String getSystemName() {
+        return system.getSystemName();
+      }
+
+      @Override
+      public String getCcsid() {
+        return system.getCcsid();
+      }
+    };
+
+    try (MigrationServer server = new MigrationServer(() -> {
+      SourceMigrator session = new SourceMigrator(counted, system, system);
+      session.setThreads(2);
+      return session;
+    })) {
+      server.start(0, 2);
+      Path serverFile = dir.resolve(MigrationServer.SERVER_FILE);
+      server.writeServerFile(serverFile);
+      Path outDir = dir.resolve("out");
+
+      ExecutorService callers = Executors.newFixedThreadPool(6);
+      List<Future<?>> calls = new ArrayList<>();
+      for (int c = 0; c < 6; c++) {
+        int caller = c;
+        calls.add(callers.submit(() -> {
+          try (MigrationClient client = MigrationClient.connect(serverFile)) {
+            for (int i = 1; i <= 20; i++) {
+              String sourcePf = "SIMLIB/QSRC" + (caller % 3 + 1);
+              String path = client.migrate(sourcePf, "MBR" + i, outDir.toString());
+              SourceMember member = system.getCatalog().getMember("SIMLIB", "QSRC" + (caller % 3 + 1), "MBR" + i);
+              assertArrayEquals(SimulatedSystem.content(member), Files.readAllBytes(Paths.get(path)));
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> call : calls) call.get();
+      callers.shutdown();
+      assertEquals(1, catalogLoads.get());
+
+      try (MigrationClient client = MigrationClient.connect(serverFile)) {
+        List<String> paths = client.migrate("SIMLIB/QSRC2", Collections.<String>emptyList(), outDir.toString());
+        assertEquals(20, paths.size());
+        IOException missing = assertThrows(IOException.class, () -> client.migrate("SIMLIB/QSRC1", "NOPE", outDir.toString()));
+        assertTrue(missing.getMessage().contains("NOPE"), missing.getMessage());
+        client.ping(); // The connection outlives a failed request
+      }
+      assertThrows(IOException.class, () -> new MigrationClient(server.getPort(), "not-the-token"));
+    }
+  }
+
+  @Test
+  void residentCatalogReloadsWhenTheProbeChanges() throws SQLException {
+    AtomicInteger loads = new AtomicInteger();
+    String[] probe = { "10|a|a" };
+    CatalogSource source = new CatalogSource() {
+      @Override
+      public SourceCatalog load(List<String> libraryNames) {
+        loads.incrementAndGet();
+        return new SourceCatalog(libraryNames);
+      }
+
+      @Override
+      public String probe(List<String> libraryNames) {
+        return probe[0];
+      }
+
+      @Override
+      public String getSystemName() {
+        return "SYS";
+      }
+
+      @Override
+      public String getCcsid() {
+        return "37";
+      }
+    };
+    CatalogSource resident = new ResidentCatalog().over(source);
+    List<String> libraries = Collections.singletonList("APP");
+
+    SourceCatalog first = resident.load(libraries);
+    assertTrue(first == resident.load(libraries));
+    probe[0] = "11|b|b"; // A member was added
+    assertTrue(first != resident.load(libraries));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void sessionsAreReplacedOnlyAfterConnectionFailures() {
+    assertTrue(MigrationServer.isConnectionFailure(new SQLException("Communication link failure", "08S01")));
+    assertTrue(MigrationServer.isConnectionFailure(new IOException("Connection dropped"))); // ConnectionDroppedException is one
+    assertTrue(MigrationServer.isConnectionFailure(new IllegalStateException("Could not open", new SQLException("Refused"))));
+    assertTrue(MigrationServer.isConnectionFailure(new UncheckedIOException(new IOException("Broken pipe"))));
+    assertFalse(MigrationServer.isConnectionFailure(new IllegalArgumentException("Library APP does not exist in your system.")));
+    assertFalse(MigrationServer.isConnectionFailure(null));
+  }
+}
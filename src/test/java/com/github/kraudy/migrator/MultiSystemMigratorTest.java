@@ -0,0 +1,55 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import picocli.CommandLine;
+
+public class MultiSystemMigratorTest {
+
+  @Test
+  void everySystemGoesToItsOwnDirAndTheMetricsAddUp(@TempDir Path outDir) throws Exception {
+    SimulatedSystem dev = new SimulatedSystem(2).addLibrary("SIMLIB", 2, 30, 5);
+    SimulatedSystem prod = new SimulatedSystem(8).addLibrary("SIMLIB", 3, 40, 5);
+    MultiSystemMigrator fanOut = new MultiSystemMigrator(profile -> {
+      if (profile.startsWith("down")) throw new IllegalStateException("Could not sign on");
+      SimulatedSystem system = profile.startsWith("dev") ? dev : prod;
+      SourceMigrator migrator = new SourceMigrator(system, system, system);
+      migrator.setThreads(4);
+      return migrator;
+    });
+    new CommandLine(fanOut).parseArgs("--systems", "dev.env,prod.env,down.env", "-o", outDir.toString(), "-sl", "SIMLIB");
+
+    MigrationMetrics metrics = fanOut.migrate();
+
+    assertEquals(60 + 120, metrics.getMembersMigrated());
+    assertEquals(0, metrics.getMigrationErrors());
+    assertEquals(5, metrics.getSourcePfsMigrated());
+    assertEquals(180, metrics.getLatency().getCount());
+    assertEquals(2, metrics.getParts().size());
+    assertEquals(60, metrics.getParts().get("dev").getMembersMigrated());
+    assertEquals("Could not sign on", fanOut.getFailures().get("down"));
+    assertTrue(metrics.toJson().contains("\"failedSystems\":\"down\""));
+
+    SourceMember member = prod.getCatalog().select(Collections.singletonList("SIMLIB"), "",
+        Collections.<String>emptyList()).get(0);
+    Path migrated = outDir.resolve("prod/SIMLIB/" + member.getSourcePf() + "/" + member.getMember() + "." + member.getSourceType());
+    assertArrayEquals(SimulatedSystem.content(member), Files.readAllBytes(migrated));
+    assertTrue(Files.isDirectory(outDir.resolve("dev/SIMLIB")));
+  }
+
+  @Test
+  void profilesAreNamedAfterTheirFile() {
+    assertEquals("prod", MultiSystemMigrator.getName("/etc/migrator/prod.env"));
+    assertEquals("dev", MultiSystemMigrator.getName("dev"));
+    assertEquals("lpar2", MultiSystemMigrator.getName("/home/me/lpar2/.env"));
+    assertTrue(MultiSystemMigrator.isFanOut("-sl", "APP", "--systems=dev.env,prod.env"));
+  }
+}
@@ -0,0 +1,50 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * End to end member migration of a whole library against the simulated system.
+ */
+public class SimulatedLoadTest {
+  private static final int THREADS = 16;
+  private static final int HOST_JOBS = 6;
+
+  @Test
+  void hostJobLimitIsNeverExceeded(@TempDir Path outDir) throws Exception {
+    SimulatedSystem system = new SimulatedSystem(HOST_JOBS)
+        .addLibrary("SIMLIB", 10, 500, 20)
+        .setReadLatency(SimulatedSystem.Latency.uniform(50, 200))
+        .setErrorRate(0.01, "CPF5029");
+
+    SourceMigrator migrator = new SourceMigrator(system, system, system);
+    migrator.setThreads(THREADS);
+    migrator.setAdaptive(true);
+    migrator.setMigrationParams("SIMLIB", "", Collections.<String>emptyList(), outDir.toString());
+    try {
+      migrator.api();
+    } finally {
+      migrator.closeEngine();
+    }
+
+    MigrationMetrics metrics = migrator.getMetrics();
+    assertEquals(5000, metrics.getMembersMigrated() + metrics.getMigrationErrors());
+    assertEquals(5000 + metrics.getRetries(), system.getReads()); // Failed reads are retried
+    assertEquals(system.getErrors(), metrics.getRetries() + metrics.getMigrationErrors());
+    assertEquals(HOST_JOBS, system.getMaxActiveJobs()); // Threads wait for a job, like on a busy partition
+    assertTrue(metrics.getRetries() > 0);
+
+    SourceMember sample = system.getCatalog().getMember("SIMLIB", "QSRC7", "MBR250");
+    Path streamFile = outDir.resolve("SIMLIB/QSRC7/MBR250.RPGLE");
+    if (Files.exists(streamFile)) { // Unless it was one of the simulated failures
+      assertArrayEquals(SimulatedSystem.content(sample), Files.readAllBytes(streamFile));
+    }
+  }
+}
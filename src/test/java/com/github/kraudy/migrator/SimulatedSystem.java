@@ -0,0 +1,214 @@
+package com.github.kraudy.migrator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * In-memory IBM i for load tests: catalog, CL commands and member reads in one place.
+ * Every call holds one of maxJobs host server jobs for its latency, like the prestarted jobs
+ * of the database and command servers. Callers past the limit wait for a job, so the scaling
+ * limits of a real partition show up on a laptop.
+ */
+public class SimulatedSystem implements CatalogSource, CommandExecutor, MemberReader {
+  public static final String SYSTEM_NAME = "SIMSYS";
+
+  /* Host latency of one call, in microseconds. */
+  public interface Latency {
+    long nextMicros();
+
+    static Latency none() {
+      return () -> 0;
+    }
+
+    static Latency fixed(long micros) {
+      return () -> micros;
+    }
+
+    static Latency uniform(long minMicros, long maxMicros) {
+      return () -> ThreadLocalRandom.current().nextLong(minMicros, maxMicros + 1);
+    }
+
+    /* Long tail of a busy partition: most calls near the median, a few many times slower. */
+    static Latency logNormal(long medianMicros, double sigma) {
+      return () -> (long) (medianMicros * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+  }
+
+  private final SourceCatalog catalog;
+  private final List<String> libraries = new ArrayList<>();
+  private final Semaphore jobs;
+  private final int maxJobs;
+
+  private Latency catalogLatency = Latency.none();
+  private Latency commandLatency = Latency.none();
+  private Latency readLatency = Latency.none();
+  private double errorRate = 0;
+  private String errorMessageId = "CPF9898";
+
+  private final AtomicInteger activeJobs = new AtomicInteger();
+  private final AtomicInteger maxActiveJobs = new AtomicInteger();
+  private final AtomicLong commands = new AtomicLong();
+  private final AtomicLong reads = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+
+  public SimulatedSystem(int maxJobs) {
+    if (maxJobs < 1) throw new IllegalArgumentException("Max jobs must be greater than zero");
+    this.maxJobs = maxJobs;
+    this.jobs = new Semaphore(maxJobs, true);
+    this.catalog = new SourceCatalog(libraries); // Every member of the system
+  }
+
+  /* Library with sourcePfs source PFs named QSRC1..n, each one with the given members of rows records. */
+  public SimulatedSystem addLibrary(String library, int sourcePfs, int membersPerPf, int rows) {
+    libraries.add(library);
+    Random random = new Random(library.hashCode()); // Same member sizes on every run
+    for (int pf = 1; pf <= sourcePfs; pf++) {
+      for (int m = 1; m <= membersPerPf; m++) {
+        int memberRows = 1 + random.nextInt(rows * 2); // Averages rows
+        catalog.add(new SourceMember(library, "QSRC" + pf, "MBR" + m, "RPGLE", "2026-01-01 00:00:00.000000",
+            memberRows, memberRows * 92L));
+      }
+    }
+    return this;
+  }
+
+  public SimulatedSystem setCatalogLatency(Latency catalogLatency) {
+    this.catalogLatency = catalogLatency;
+    return this;
+  }
+
+  public SimulatedSystem setCommandLatency(Latency commandLatency) {
+    this.commandLatency = commandLatency;
+    return this;
+  }
+
+  public SimulatedSystem setReadLatency(Latency readLatency) {
+    this.readLatency = readLatency;
+    return this;
+  }
+
+  /* Fraction of commands and reads that fail with the message. */
+  public SimulatedSystem setErrorRate(double errorRate, String messageId) {
+    if (errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("Error rate must be between 0 and 1");
+    this.errorRate = errorRate;
+    this.errorMessageId = messageId;
+    return this;
+  }
+
+  @Override
+  public SourceCatalog load(List<String> libraryNames) {
+    work(catalogLatency);
+    SourceCatalog loaded = new SourceCatalog(libraryNames);
+    for (String name : libraryNames) {
+      for (String library : name.contains("*") ? catalog.matchLibraries(name) : Arrays.asList(name)) {
+        for (String sourcePf : catalog.getSourcePfs(library)) {
+          for (SourceMember member : catalog.getMembers(library, sourcePf).values()) loaded.add(member);
+        }
+      }
+    }
+    return loaded;
+  }
+
+  @Override
+  public String getSystemName() {
+    return SYSTEM_NAME;
+  }
+
+  @Override
+  public String getCcsid() {
+    return "37";
+  }
+
+  @Override
+  public CommandResult run(String commandStr) {
+    commands.incrementAndGet();
+    if (!work(commandLatency)) {
+      return CommandResult.failed(commandStr, errorMessageId, "Simulated failure of " + commandStr);
+    }
+    return CommandResult.ok(commandStr);
+  }
+
+  @Override
+  public byte[] read(String library, String sourcePf, String member) throws IOException {
+    reads.incrementAndGet();
+    SourceMember sourceMember = catalog.getMember(library, sourcePf, member);
+    if (sourceMember == null) {
+      throw new IOException("CPF3141 Member " + member + " not found");
+    }
+    if (!work(readLatency)) {
+      throw new IOException(errorMessageId + " Simulated failure reading " + library + "/" + sourcePf + "/" + member);
+    }
+    return content(sourceMember);
+  }
+
+  @Override
+  public void close() {
+    // Nothing is held between calls, the same system can serve many runs
+  }
+
+  /* Same text for the same member, so tests can check what was written. */
+  public static byte[] content(SourceMember member) {
+    StringBuilder source = new StringBuilder((int) member.getDataSize());
+    for (long row = 1; row <= member.getRows(); row++) {
+      source.append("       dsply '").append(member.getMember()).append(" row ").append(row).append("';\n");
+    }
+    return source.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /* Holds a host job for the latency. False if the call should fail. */
+  private boolean work(Latency latency) {
+    jobs.acquireUninterruptibly();
+    try {
+      maxActiveJobs.accumulateAndGet(activeJobs.incrementAndGet(), Math::max);
+      long micros = latency.nextMicros();
+      if (micros > 0) LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        errors.incrementAndGet();
+        return false;
+      }
+      return true;
+    } finally {
+      activeJobs.decrementAndGet();
+      jobs.release();
+    }
+  }
+
+  public List<String> getLibraries() {
+    return libraries;
+  }
+
+  public SourceCatalog getCatalog() {
+    return catalog;
+  }
+
+  public int getMaxJobs() {
+    return maxJobs;
+  }
+
+  /* Most host jobs busy at once. Never above maxJobs. */
+  public int getMaxActiveJobs() {
+    return maxActiveJobs.get();
+  }
+
+  public long getCommands() {
+    return commands.get();
+  }
+
+  public long getReads() {
+    return reads.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SourceCatalogTest {
+  private static final List<String> SCOPE = Arrays.asList("APP*", "TOOLS");
+
+  private SourceCatalog sample() {
+    SourceCatalog catalog = new SourceCatalog(SCOPE);
+    catalog.add(new SourceMember("APPA", "QRPGLESRC", "HELLO", "RPGLE", "2024-01-01 10:00:00.0", 20, 4096));
+    catalog.add(new SourceMember("APPA", "QRPGLESRC", "BYE", "RPGLE", null, 10, 4096));
+    catalog.add(new SourceMember("APPB", "QCLSRC", "START", "CLLE", "2024-01-02 10:00:00.0", 5, 4096));
+    catalog.add(new SourceMember("TOOLS", "QRPGLESRC", "UTIL", "SQLRPGLE", "2024-01-03 10:00:00.0", 100, 8192));
+    return catalog;
+  }
+
+  @Test
+  void answersValidationsFromMemory() {
+    SourceCatalog catalog = sample();
+
+    assertEquals(4, catalog.size());
+    assertEquals(Arrays.asList("APPA", "APPB"), catalog.matchLibraries("APP*"));
+    assertTrue(catalog.hasSourcePf("APPA", "QRPGLESRC"));
+    assertFalse(catalog.hasSourcePf("APPB", "QRPGLESRC"));
+    assertEquals(2, catalog.getMemberCount("APPA", "QRPGLESRC"));
+    assertEquals(2, catalog.select(Arrays.asList("APPA", "TOOLS"), "QRPGLESRC", Arrays.asList("HELLO", "UTIL")).size());
+    assertEquals(4, catalog.select(catalog.getLibraries(), "", Collections.<String>emptyList()).size());
+  }
+
+  @Test
+  void cacheRoundTripHonoursScopeAndTtl(@TempDir Path dir) throws Exception {
+    Path cacheFile = dir.resolve("catalog.tsv");
+    sample().save(cacheFile);
+
+    SourceCatalog cached = SourceCatalog.readCache(cacheFile, 60, Arrays.asList("TOOLS", "APP*"));
+    assertNotNull(cached);
+    assertEquals(4, cached.size());
+    assertNull(cached.getMember("APPA", "QRPGLESRC", "BYE").getLastUpdate());
+    assertEquals(100, cached.getMember("TOOLS", "QRPGLESRC", "UTIL").getRows());
+
+    assertNull(SourceCatalog.readCache(cacheFile, 60, Arrays.asList("OTHER")));
+    assertNull(SourceCatalog.readCache(cacheFile, -1, SCOPE));
+  }
+}
@@ -0,0 +1,49 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SourceDigestsTest {
+
+  /* Member content as MemberReader returns it: records of 80 with blank padding. */
+  private byte[] member(String... records) {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (String record : records) {
+      RecordMemberReader.appendLine(content, String.format("%-80s", record));
+    }
+    return content.toByteArray();
+  }
+
+  @Test
+  void streamFileMatchesMemberWhateverTheLineEnds(@TempDir Path dir) throws Exception {
+    Path crlf = dir.resolve("hello.rpgle");
+    Files.write(crlf, "**free\r\ndsply 'Hello';   \r\n*inlr = *on;".getBytes(StandardCharsets.UTF_8));
+
+    String memberDigest = SourceDigests.sha256(member("**free", "dsply 'Hello';", "*inlr = *on;"));
+    assertEquals(memberDigest, SourceDigests.ofStreamFile(crlf));
+
+    Files.write(crlf, "**free\ndsply 'Bye';\n*inlr = *on;\n".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(memberDigest, SourceDigests.ofStreamFile(crlf));
+  }
+
+  @Test
+  void cachedDigestFollowsTheChangeTimestamp(@TempDir Path dir) throws Exception {
+    String key = SourceDigests.key("APPA", "QRPGLESRC", "HELLO");
+    SourceDigests digests = SourceDigests.load(dir);
+    digests.put(key, "2024-01-01 10:00:00.000000", "abc");
+    digests.save();
+
+    SourceDigests reloaded = SourceDigests.load(dir);
+    assertEquals("abc", reloaded.get(key, "2024-01-01 10:00:00.000000"));
+    assertNull(reloaded.get(key, "2024-01-02 10:00:00.000000"));
+    assertNull(reloaded.get(key, null));
+  }
+}
@@ -0,0 +1,29 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatementCacheTest {
+
+  @Test
+  void chunksArePaddedToTheSameSize() {
+    List<String> members = new ArrayList<>();
+    for (int i = 0; i < StatementCache.IN_LIST_SIZE + 3; i++) members.add("MBR" + i);
+
+    List<List<String>> chunks = StatementCache.chunks(members);
+
+    assertEquals(2, chunks.size());
+    for (List<String> chunk : chunks) assertEquals(StatementCache.IN_LIST_SIZE, chunk.size());
+    assertEquals("MBR" + (StatementCache.IN_LIST_SIZE + 2), chunks.get(1).get(StatementCache.IN_LIST_SIZE - 1));
+    assertTrue(StatementCache.chunks(new ArrayList<>()).isEmpty());
+  }
+
+  @Test
+  void placeholdersMatchCount() {
+    assertEquals("?, ?, ?", StatementCache.placeholders(3));
+  }
+}
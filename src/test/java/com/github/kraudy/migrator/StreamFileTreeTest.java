@@ -0,0 +1,56 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class StreamFileTreeTest {
+
+  private void touch(Path root, String relativePath) throws IOException {
+    Path file = root.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    Files.write(file, "**free\n".getBytes());
+  }
+
+  @Test
+  void mapsTheTreeToMissingSourcePfsAndMembers(@TempDir Path root) throws IOException {
+    touch(root, "appa/qrpglesrc/hello.rpgle");
+    touch(root, "appa/qrpglesrc/new.rpgle");
+    touch(root, "appa/qrpglesrc/.migrator-manifest");
+    touch(root, "appa/qrpglesrc/toolongmembername.rpgle");
+    touch(root, "appa/qclsrc/start.clle");
+    touch(root, "other/qrpglesrc/util.rpgle");
+    touch(root, ".git/qrpglesrc/head.rpgle");
+
+    StreamFileTree tree = StreamFileTree.scan(root, Arrays.asList("APPA"), "", Collections.<String>emptyList());
+
+    List<String> members = tree.getFiles().stream().map(f -> f.getMember().toString()).collect(Collectors.toList());
+    assertEquals(3, members.size());
+    assertEquals(1, tree.getSkipped().size());
+
+    SourceCatalog catalog = new SourceCatalog(Arrays.asList("APPA"));
+    catalog.add(new SourceMember("APPA", "QRPGLESRC", "HELLO", "RPGLE", null));
+
+    assertEquals(Arrays.asList("APPA/QCLSRC"), tree.getMissingSourcePfs(catalog).stream().collect(Collectors.toList()));
+    assertEquals(Arrays.asList("NEW", "START"), 
+        tree.getMissingMembers(catalog).stream().map(SourceMember::getMember).sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  void followsTheSourcePfAndMemberFilters(@TempDir Path root) throws IOException {
+    touch(root, "APPA/QRPGLESRC/HELLO.RPGLE");
+    touch(root, "APPA/QRPGLESRC/BYE.RPGLE");
+    touch(root, "APPA/QCLSRC/START.CLLE");
+
+    assertEquals(2, StreamFileTree.scan(root, Arrays.asList("APPA"), "QRPGLESRC", Collections.<String>emptyList()).getFiles().size());
+    assertEquals(1, StreamFileTree.scan(root, Arrays.asList("APPA"), "QRPGLESRC", Arrays.asList("BYE")).getFiles().size());
+  }
+}
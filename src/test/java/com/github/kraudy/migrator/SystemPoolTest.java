@@ -0,0 +1,46 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.as400.access.AS400;
+
+public class SystemPoolTest {
+
+  @Test
+  void closeWakesTheThreadsWaitingForASystem() throws Exception {
+    SystemPool systems = new SystemPool(new AS400("localhost", "NOBODY", "secret".toCharArray()), 1); // Never connected
+    assertNotNull(systems.borrow());
+
+    List<CompletableFuture<AS400>> waiters = Arrays.asList(new CompletableFuture<AS400>(), new CompletableFuture<AS400>());
+    for (CompletableFuture<AS400> waiter : waiters) {
+      Thread thread = new Thread(() -> {
+        try {
+          waiter.complete(systems.borrow());
+        } catch (Throwable e) {
+          waiter.completeExceptionally(e);
+        }
+      }, "pool-waiter");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    Thread.sleep(200);
+    assertFalse(waiters.get(0).isDone() || waiters.get(1).isDone());
+
+    systems.close();
+    for (CompletableFuture<AS400> waiter : waiters) {
+      ExecutionException error = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+      assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+    assertThrows(IllegalStateException.class, systems::borrow);
+  }
+}
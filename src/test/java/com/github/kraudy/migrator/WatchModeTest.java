@@ -0,0 +1,55 @@
+package com.github.kraudy.migrator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class WatchModeTest {
+
+  @Test
+  void watchCopiesOnlyTheMembersEditedAfterTheFirstRun(@TempDir Path outDir) throws Exception {
+    SimulatedSystem system = new SimulatedSystem(4).addLibrary("SIMLIB", 2, 50, 5);
+    SourceMigrator migrator = new SourceMigrator(system, system, system);
+    migrator.setThreads(4);
+    migrator.setWatch(1);
+    migrator.setMigrationParams("SIMLIB", "", Collections.<String>emptyList(), outDir.toString());
+    BlockingQueue<MemberResult> migrated = new LinkedBlockingQueue<>();
+    migrator.addListener(result -> {
+      if (result.getStatus() == MemberResult.Status.MIGRATED) migrated.add(result);
+    });
+
+    Thread watch = new Thread(migrator::api, "watch-test");
+    watch.setDaemon(true);
+    watch.start();
+    try {
+      for (int i = 0; i < 100; i++) {
+        assertTrue(migrated.poll(10, TimeUnit.SECONDS) != null, "First run");
+      }
+
+      SourceMember edited = new SourceMember("SIMLIB", "QSRC2", "MBR7", "RPGLE", "2026-03-01 12:00:00.000000", 40, 3680);
+      system.getCatalog().add(edited);
+      MemberResult result = migrated.poll(10, TimeUnit.SECONDS);
+      assertTrue(result != null, "Edit picked up by the watch");
+      assertEquals("MBR7", result.getMember());
+      assertArrayEquals(SimulatedSystem.content(edited), Files.readAllBytes(outDir.resolve("SIMLIB/QSRC2/MBR7.RPGLE")));
+
+      assertTrue(migrated.poll(1500, TimeUnit.MILLISECONDS) == null, "Nothing else changed");
+      assertEquals(101, system.getReads());
+    } finally {
+      migrator.stopWatch();
+      watch.join(TimeUnit.SECONDS.toMillis(10));
+      migrator.closeEngine();
+    }
+    assertFalse(watch.isAlive());
+  }
+}